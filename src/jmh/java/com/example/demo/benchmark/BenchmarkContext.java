@@ -0,0 +1,83 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.DemoApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Starts the application against its own in-memory H2 database and generates pets to work on.
+ */
+final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * @param properties extra {@code name=value} pairs, passed as command line arguments so they override
+     *                   {@code application.properties}
+     */
+    static ConfigurableApplicationContext start(String... properties) {
+        List<String> args = new ArrayList<>(List.of(
+                "spring.jpa.hibernate.ddl-auto=create-drop",
+                // every job without the integration flows that would run and exit
+                "spring.profiles.active=jobs"));
+        args.addAll(List.of(properties));
+        return startEmpty(args.toArray(new String[0]));
+    }
+
+    /**
+     * Starts the application with no tables and no active profile of its own, for the caller to choose.
+     */
+    static ConfigurableApplicationContext startEmpty(String... properties) {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--logging.level.root=WARN",
+                "--metrics.file=target/metrics/benchmark.prom"));
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        return new SpringApplicationBuilder(DemoApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run(args.toArray(new String[0]));
+    }
+
+    static void insertPets(JdbcTemplate jdbcTemplate, int owners, int petsPerOwner) {
+        List<Object[]> ownerRows = new ArrayList<>();
+        List<Object[]> petRows = new ArrayList<>();
+        for (long owner = 1; owner <= owners; owner++) {
+            ownerRows.add(new Object[] { owner, "owner " + owner });
+            for (long pet = 1; pet <= petsPerOwner; pet++) {
+                petRows.add(new Object[] { (owner - 1) * petsPerOwner + pet, owner });
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into owner (id, name) values (?, ?)", ownerRows);
+        jdbcTemplate.batchUpdate("insert into pet (id, owner_id, name) values (?, ?, null)", petRows);
+    }
+
+    static Path writeNamesFile(int pets, int owners) throws IOException {
+        Path file = Files.createTempFile("pet-names-", ".csv");
+        file.toFile().deleteOnExit();
+        int petsPerOwner = Math.max(1, pets / owners);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("id,owner_id,name\n");
+            for (int pet = 1; pet <= pets; pet++) {
+                writer.write(pet + "," + ((pet - 1) / petsPerOwner + 1) + ",name " + pet + "\n");
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.domain.Owner;
+import com.example.demo.domain.Pet;
+import com.example.demo.integration.extract.PetLineAggregator;
+import com.example.demo.integration.ingest.PetDto;
+import com.example.demo.integration.ingest.PetDtoLineMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.batch.item.file.mapping.BeanWrapperFieldSetMapper;
+import org.springframework.batch.item.file.mapping.DefaultLineMapper;
+import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
+import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.batch.item.file.transform.LineAggregator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats and parses single pet lines with the codec and with the Spring Batch reflection-based components it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvCodecBenchmark {
+
+    private Pet pet;
+    private String line;
+    private BeanWrapperFieldExtractor<Pet> petFieldExtractor;
+    private LineAggregator<Pet> delimitedLineAggregator;
+    private LineAggregator<Pet> petLineAggregator;
+    private LineMapper<PetDto> defaultLineMapper;
+    private LineMapper<PetDto> petDtoLineMapper;
+
+    @Setup
+    public void setUp() {
+        Owner owner = new Owner();
+        owner.setId(42L);
+        pet = new Pet();
+        pet.setId(1234567L);
+        pet.setOwner(owner);
+        pet.setName("spot");
+        line = "1234567,42,spot";
+
+        petFieldExtractor = new BeanWrapperFieldExtractor<>();
+        petFieldExtractor.setNames(new String[] { "id", "owner.id", "name" });
+        DelimitedLineAggregator<Pet> aggregator = new DelimitedLineAggregator<>();
+        aggregator.setFieldExtractor(petFieldExtractor);
+        delimitedLineAggregator = aggregator;
+        petLineAggregator = new PetLineAggregator();
+
+        DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer();
+        tokenizer.setNames(new String[] { "id", "ownerId", "name" });
+        BeanWrapperFieldSetMapper<PetDto> fieldSetMapper = new BeanWrapperFieldSetMapper<>();
+        fieldSetMapper.setTargetType(PetDto.class);
+        DefaultLineMapper<PetDto> lineMapper = new DefaultLineMapper<>();
+        lineMapper.setLineTokenizer(tokenizer);
+        lineMapper.setFieldSetMapper(fieldSetMapper);
+        defaultLineMapper = lineMapper;
+        petDtoLineMapper = new PetDtoLineMapper();
+    }
+
+    @Benchmark
+    public Object[] beanWrapperFieldExtractor() {
+        return petFieldExtractor.extract(pet);
+    }
+
+    @Benchmark
+    public String delimitedLineAggregator() {
+        return delimitedLineAggregator.aggregate(pet);
+    }
+
+    @Benchmark
+    public String petLineAggregator() {
+        return petLineAggregator.aggregate(pet);
+    }
+
+    @Benchmark
+    public PetDto defaultLineMapper() throws Exception {
+        return defaultLineMapper.mapLine(line, 1);
+    }
+
+    @Benchmark
+    public PetDto petDtoLineMapper() throws Exception {
+        return petDtoLineMapper.mapLine(line, 1);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.domain.Pet;
+import com.example.demo.integration.ingest.ExistingPetItemProcessor;
+import com.example.demo.integration.ingest.PetDto;
+import com.example.demo.integration.ingest.PetItemProcessor;
+import com.example.demo.integration.ingest.PetNameItemWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.batch.item.database.JpaItemWriter;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes one chunk of pet names per operation, through {@link PetItemProcessor} and a {@link JpaItemWriter} or through
+ * {@link ExistingPetItemProcessor} and the JDBC batch {@link PetNameItemWriter}, in a transaction like a chunk-oriented
+ * step would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestWriterBenchmark {
+
+    private static final int PETS = 10000;
+
+    @Param({ "5", "100", "1000" })
+    public int chunkSize;
+
+    private ConfigurableApplicationContext context;
+    private TransactionTemplate transactionTemplate;
+    private PetItemProcessor petItemProcessor;
+    private JpaItemWriter<Pet> jpaItemWriter;
+    private ExistingPetItemProcessor existingPetItemProcessor;
+    private PetNameItemWriter petNameItemWriter;
+    private int nextId;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.insertPets(context.getBean(JdbcTemplate.class), PETS / 100, 100);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        petItemProcessor = context.getBean(PetItemProcessor.class);
+        jpaItemWriter = new JpaItemWriter<>();
+        jpaItemWriter.setEntityManagerFactory(context.getBean(EntityManagerFactory.class));
+        existingPetItemProcessor = new ExistingPetItemProcessor(new NamedParameterJdbcTemplate(context.getBean(JdbcTemplate.class)));
+        petNameItemWriter = new PetNameItemWriter(context.getBean(JdbcTemplate.class));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void processorAndJpaWriter() {
+        List<PetDto> chunk = nextChunk();
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Pet> pets = new ArrayList<>(chunk.size());
+            for (PetDto petDto : chunk) {
+                Pet pet = petItemProcessor.process(petDto);
+                if (pet != null) {
+                    pets.add(pet);
+                }
+            }
+            jpaItemWriter.write(pets);
+        });
+    }
+
+    @Benchmark
+    public void jdbcBatchWriter() {
+        List<PetDto> chunk = nextChunk();
+        transactionTemplate.executeWithoutResult(status -> {
+            chunk.forEach(existingPetItemProcessor::afterRead);
+            List<PetDto> pets = new ArrayList<>(chunk.size());
+            for (PetDto petDto : chunk) {
+                PetDto pet = existingPetItemProcessor.process(petDto);
+                if (pet != null) {
+                    pets.add(pet);
+                }
+            }
+            petNameItemWriter.write(pets);
+        });
+    }
+
+    private List<PetDto> nextChunk() {
+        List<PetDto> chunk = new ArrayList<>(chunkSize);
+        for (int i = 0; i < chunkSize; i++) {
+            PetDto pet = new PetDto();
+            pet.setId((long) (nextId++ % PETS) + 1);
+            pet.setName("name " + nextId);
+            chunk.add(pet);
+        }
+        return chunk;
+    }
+}
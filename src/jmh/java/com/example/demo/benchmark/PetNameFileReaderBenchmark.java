@@ -0,0 +1,57 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.integration.CompressionCodec;
+import com.example.demo.integration.QuotedRecordSeparatorPolicy;
+import com.example.demo.integration.ingest.PetDto;
+import com.example.demo.integration.ingest.PetDtoLineMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileItemReader;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a whole generated names file, compressed with {@code codec}, the way {@code petNameFileReader} does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PetNameFileReaderBenchmark {
+
+    @Param({ "100000" })
+    public int lines;
+
+    @Param({ "NONE", "GZIP", "ZSTD" })
+    public CompressionCodec codec;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws Exception {
+        file = codec.compress(BenchmarkContext.writeNamesFile(lines, Math.max(1, lines / 100)).toFile());
+        file.deleteOnExit();
+    }
+
+    @Benchmark
+    public void readFile(Blackhole blackhole) throws Exception {
+        FlatFileItemReader<PetDto> reader = new FlatFileItemReader<>();
+        reader.setResource(CompressionCodec.decompressingResource(file.getPath()));
+        reader.setLinesToSkip(1);
+        reader.setLineMapper(new PetDtoLineMapper());
+        reader.setRecordSeparatorPolicy(new QuotedRecordSeparatorPolicy());
+        reader.open(new ExecutionContext());
+        try {
+            PetDto pet;
+            while ((pet = reader.read()) != null) {
+                blackhole.consume(pet);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
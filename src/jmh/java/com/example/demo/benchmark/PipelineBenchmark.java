@@ -0,0 +1,88 @@
+package com.example.demo.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.batch.core.*;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@code extractJob} and {@code ingestJob} end to end over a generated owner with {@code rows} pets, with a fixed
+ * {@code chunkSize} or an adaptive one when {@code targetChunkMillis} is set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @Param({ "10000" })
+    public int rows;
+
+    @Param({ "5", "1000" })
+    public int chunkSize;
+
+    @Param({ "0" })
+    public long targetChunkMillis;
+
+    private ConfigurableApplicationContext context;
+    private JobLauncher jobLauncher;
+    private Job extractJob;
+    private Job ingestJob;
+    private Path directory;
+    private Path namesFile;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = BenchmarkContext.start(
+                "extract.chunkSize=" + chunkSize, "extract.targetChunkMillis=" + targetChunkMillis,
+                "ingest.chunkSize=" + chunkSize, "ingest.targetChunkMillis=" + targetChunkMillis);
+        BenchmarkContext.insertPets(context.getBean(JdbcTemplate.class), 1, rows);
+        jobLauncher = context.getBean(JobLauncher.class);
+        extractJob = context.getBean("extractJob", Job.class);
+        ingestJob = context.getBean("ingestJob", Job.class);
+        directory = Files.createTempDirectory("pipeline-");
+        namesFile = BenchmarkContext.writeNamesFile(rows, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public JobExecution extractStep() throws Exception {
+        File file = directory.resolve("1-" + System.nanoTime() + ".csv").toFile();
+        file.deleteOnExit();
+        return run(extractJob, new JobParametersBuilder()
+                .addLong("owner_id", 1L)
+                .addString("file", file.getPath())
+                .addDate("execution_time", new Date())
+                .toJobParameters());
+    }
+
+    @Benchmark
+    public JobExecution ingestStep() throws Exception {
+        return run(ingestJob, new JobParametersBuilder()
+                .addString("file", namesFile.toString())
+                .addDate("execution_time", new Date())
+                .addLong("run", System.nanoTime())
+                .toJobParameters());
+    }
+
+    private JobExecution run(Job job, JobParameters jobParameters) throws JobExecutionException {
+        JobExecution jobExecution = jobLauncher.run(job, jobParameters);
+        if (jobExecution.getStatus() != BatchStatus.COMPLETED) {
+            throw new IllegalStateException(job.getName() + " ended with status " + jobExecution.getStatus(), jobExecution.getAllFailureExceptions().stream().findFirst().orElse(null));
+        }
+        return jobExecution;
+    }
+}
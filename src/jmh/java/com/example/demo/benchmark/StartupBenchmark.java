@@ -0,0 +1,33 @@
+package com.example.demo.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts and closes the extraction context once per fork, so every measurement is a cold start in a fresh JVM, with
+ * the default settings or with the {@code faststart} profile added. The inbound adapters are not started, as in a
+ * {@code cds} training run, so the extraction flow does not run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class StartupBenchmark {
+
+    @Param({ "extraction", "extraction,faststart" })
+    public String profiles;
+
+    @Benchmark
+    public void start() {
+        ConfigurableApplicationContext context = BenchmarkContext.startEmpty(
+                "spring.profiles.active=" + profiles,
+                "integration.autoStartup=false",
+                // Hibernate leaves the schema alone, as it does against PostgreSQL
+                "spring.jpa.hibernate.ddl-auto=none");
+        context.close();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.demo.integration;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.repeat.policy.SimpleCompletionPolicy;
+
+/**
+ * Completes a chunk after a number of items that is tuned after every commit so a chunk takes about
+ * {@code targetMillis} from first read to commit. The size changes by at most a factor of two per chunk and stays
+ * between one and {@code maxChunkSize}, which bounds how many items are held in memory. A target of zero keeps the
+ * initial size. Every chunk size used is recorded as {@code batch.commit.interval}.
+ * <p>
+ * Keeps state for one step execution, so it has to be step scoped and registered as a listener on the step as well.
+ */
+@Slf4j
+public class AdaptiveChunkSizePolicy extends SimpleCompletionPolicy implements ChunkListener {
+
+    private final int maxChunkSize;
+    private final long targetMillis;
+    private final MeterRegistry meterRegistry;
+
+    private long chunkStart;
+
+    public AdaptiveChunkSizePolicy(int chunkSize, int maxChunkSize, long targetMillis, MeterRegistry meterRegistry) {
+        super(Math.min(chunkSize, maxChunkSize));
+        this.maxChunkSize = maxChunkSize;
+        this.targetMillis = targetMillis;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        chunkStart = System.nanoTime();
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        StepContext stepContext = context.getStepContext();
+        DistributionSummary.builder("batch.commit.interval")
+                .description("Items per chunk chosen by the completion policy")
+                .tag("job", stepContext.getJobName())
+                .tag("step", stepContext.getStepName())
+                .register(meterRegistry)
+                .record(getChunkSize());
+        if (targetMillis <= 0) {
+            return;
+        }
+        double elapsedMillis = Math.max((System.nanoTime() - chunkStart) / 1_000_000d, 1d);
+        double ratio = Math.max(0.5d, Math.min(2d, targetMillis / elapsedMillis));
+        int chunkSize = (int) Math.max(1, Math.min(maxChunkSize, Math.round(getChunkSize() * ratio)));
+        if (chunkSize != getChunkSize()) {
+            log.debug("Chunk of [{}] items took [{}] ms, next chunk will have [{}] items", getChunkSize(), Math.round(elapsedMillis), chunkSize);
+            setChunkSize(chunkSize);
+        }
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.demo.integration;
+
+import org.springframework.batch.core.configuration.annotation.BatchConfigurer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.batch.BatchProperties;
+import org.springframework.boot.autoconfigure.batch.JpaBatchConfigurer;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+@Configuration
+public class BatchConfigurerConfiguration {
+
+    /**
+     * Boot's configurer for a JPA application, creating job executions at read committed. Spring Batch's default of
+     * serializable makes the concurrent launches of a run fail each other's inserts into the batch tables, and every
+     * launch of a run is for its own job instance, so there is no duplicate execution for serializable to prevent.
+     */
+    @Bean
+    public BatchConfigurer batchConfigurer(BatchProperties properties, DataSource dataSource,
+                                           ObjectProvider<TransactionManagerCustomizers> transactionManagerCustomizers,
+                                           EntityManagerFactory entityManagerFactory) {
+        return new JpaBatchConfigurer(properties, dataSource, transactionManagerCustomizers.getIfAvailable(), entityManagerFactory) {
+            @Override
+            protected String determineIsolationLevel() {
+                return "ISOLATION_READ_COMMITTED";
+            }
+        };
+    }
+}
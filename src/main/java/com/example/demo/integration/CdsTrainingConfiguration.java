@@ -0,0 +1,25 @@
+package com.example.demo.integration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+@Configuration
+@Slf4j
+@Profile("cds")
+public class CdsTrainingConfiguration {
+
+    /**
+     * Ends a class data sharing training run once the context is ready. The {@code cds} profile leaves the integration
+     * flows' inbound adapters stopped, so the run loads the classes a real run starts with and does none of its work.
+     */
+    @Bean
+    public ApplicationRunner cdsTrainingRunner() {
+        return args -> {
+            log.info("Context started for class data sharing training, shutting down JVM");
+            System.exit(0); // the archive is written as the JVM exits
+        };
+    }
+}
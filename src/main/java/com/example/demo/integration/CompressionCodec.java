@@ -0,0 +1,111 @@
+package com.example.demo.integration;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of extract files and objects. The codec is recorded as an extension of the file name or object key, so
+ * readers pick the matching decompressor from the name alone. Both formats accept concatenated frames, which lets
+ * writers compress every chunk on its own.
+ */
+public enum CompressionCodec {
+
+    NONE("") {
+        @Override
+        public OutputStream compress(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return in;
+        }
+    },
+    GZIP(".gz") {
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+    ZSTD(".zst") {
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException {
+            return new ZstdOutputStream(out);
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new BufferedInputStream(new ZstdInputStream(in), BUFFER_SIZE);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String extension;
+
+    CompressionCodec(String extension) {
+        this.extension = extension;
+    }
+
+    public abstract OutputStream compress(OutputStream out) throws IOException;
+
+    public abstract InputStream decompress(InputStream in) throws IOException;
+
+    public String fileName(String name) {
+        return name + extension;
+    }
+
+    /**
+     * @return the codec matching the extension of a file name or object key, {@link #NONE} when there is none
+     */
+    public static CompressionCodec forName(String name) {
+        for (CompressionCodec codec : values()) {
+            if (codec != NONE && name.endsWith(codec.extension)) {
+                return codec;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return a resource reading the decompressed content of the file, whichever codec its name says it was written with
+     */
+    public static Resource decompressingResource(String file) {
+        CompressionCodec codec = forName(file);
+        if (codec == NONE) {
+            return new FileSystemResource(file);
+        }
+        return new FileSystemResource(file) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return codec.decompress(super.getInputStream());
+            }
+        };
+    }
+
+    /**
+     * Streams {@code file} through the codec into a file next to it named with the codec extension.
+     */
+    public File compress(File file) throws IOException {
+        if (this == NONE) {
+            return file;
+        }
+        File compressed = new File(file.getParentFile(), fileName(file.getName()));
+        try (InputStream in = new FileInputStream(file);
+             OutputStream out = compress(new BufferedOutputStream(new FileOutputStream(compressed), BUFFER_SIZE))) {
+            in.transferTo(out);
+        }
+        return compressed;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.demo.integration;
+
+/**
+ * File format of extracts and name files, passed to the jobs as the {@code format} job parameter. Files without a
+ * {@code format} parameter are CSV.
+ */
+public enum ExchangeFormat {
+
+    CSV(".csv"),
+    PARQUET(".parquet");
+
+    private final String extension;
+
+    ExchangeFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String parameter() {
+        return name().toLowerCase();
+    }
+
+    /**
+     * @return the format of a file name or object key, which may carry a {@link CompressionCodec} extension after it
+     */
+    public static ExchangeFormat forName(String name) {
+        return name.contains(PARQUET.extension) ? PARQUET : CSV;
+    }
+}
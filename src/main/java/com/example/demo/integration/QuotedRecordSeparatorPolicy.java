@@ -0,0 +1,27 @@
+package com.example.demo.integration;
+
+import org.springframework.batch.item.file.separator.SimpleRecordSeparatorPolicy;
+
+/**
+ * Keeps reading lines while a record has an open double quote, so a quoted field can span several lines. Unlike
+ * {@link org.springframework.batch.item.file.separator.DefaultRecordSeparatorPolicy} a trailing backslash has no
+ * special meaning.
+ */
+public class QuotedRecordSeparatorPolicy extends SimpleRecordSeparatorPolicy {
+
+    @Override
+    public boolean isEndOfRecord(String record) {
+        int quotes = 0;
+        for (int i = 0; i < record.length(); i++) {
+            if (record.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        return quotes % 2 == 0;
+    }
+
+    @Override
+    public String preProcess(String record) {
+        return record + "\n";
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.demo.integration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.*;
+import org.springframework.batch.core.converter.DefaultJobParametersConverter;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Records in the {@code run_unit} table how far every job a run launches has got, keyed by job name and the job key
+ * of its identifying parameters, along with the parameters themselves. A resumed run reads back the units that are not
+ * {@link UnitStage#DONE} and relaunches them with their original parameters, so Spring Batch restarts the failed job
+ * instance from its last commit instead of starting a new one. Does nothing when checkpoints are disabled.
+ */
+@Slf4j
+public class RunCheckpoints {
+
+    private static final String RECORD = "insert into run_unit (job_name, job_key, job_parameters, stage) values (?, ?, ?, ?) "
+            + "on conflict (job_name, job_key) do update set stage = excluded.stage, updated_at = now()";
+
+    private static final String UNFINISHED = "select job_parameters, stage from run_unit where job_name = ? and stage <> 'DONE' order by updated_at";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JobRepository jobRepository;
+    private final boolean enabled;
+    private final JobKeyGenerator<JobParameters> jobKeyGenerator = new DefaultJobKeyGenerator();
+
+    public RunCheckpoints(JdbcTemplate jdbcTemplate, JobRepository jobRepository, boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jobRepository = jobRepository;
+        this.enabled = enabled;
+    }
+
+    public void record(String jobName, JobParameters jobParameters, UnitStage stage) {
+        if (!enabled) {
+            return;
+        }
+        jdbcTemplate.update(RECORD, jobName, jobKeyGenerator.generateKey(jobParameters), write(jobParameters), stage.name());
+        log.debug("Unit of [{}] with parameters [{}] reached [{}]", jobName, jobParameters, stage);
+    }
+
+    public List<RunUnit> unfinished(String jobName) {
+        List<RunUnit> units = jdbcTemplate.query(UNFINISHED, (rs, rowNum) -> {
+            JobParameters jobParameters = read(rs.getString(1));
+            UnitStage stage = UnitStage.valueOf(rs.getString(2));
+            if (stage == UnitStage.LAUNCHED) {
+                // the run may have stopped after the job completed but before that was recorded
+                JobExecution jobExecution = lastExecution(jobName, jobParameters);
+                if (jobExecution != null && jobExecution.getStatus() == BatchStatus.COMPLETED) {
+                    stage = UnitStage.JOB_COMPLETED;
+                }
+            }
+            return new RunUnit(jobName, jobParameters, stage);
+        }, jobName);
+        log.info("Found [{}] unfinished units of [{}] to resume", units.size(), jobName);
+        return units;
+    }
+
+    public JobExecution lastExecution(String jobName, JobParameters jobParameters) {
+        return jobRepository.getLastJobExecution(jobName, jobParameters);
+    }
+
+    /**
+     * Fails the last execution of a job instance if the repository still has it running, which is what a crashed
+     * run leaves behind. Only safe while no other process can be running the same instance.
+     */
+    public void failStaleExecution(String jobName, JobParameters jobParameters) {
+        JobExecution jobExecution = lastExecution(jobName, jobParameters);
+        if (jobExecution == null || !jobExecution.isRunning()) {
+            return;
+        }
+        log.warn("Marking stale job execution [{}] of [{}] as failed so it can be restarted", jobExecution.getId(), jobName);
+        Date now = new Date();
+        for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+            if (stepExecution.getStatus().isRunning()) {
+                stepExecution.setStatus(BatchStatus.FAILED);
+                stepExecution.setExitStatus(ExitStatus.FAILED);
+                stepExecution.setEndTime(now);
+                jobRepository.update(stepExecution);
+            }
+        }
+        jobExecution.setStatus(BatchStatus.FAILED);
+        jobExecution.setExitStatus(ExitStatus.FAILED.addExitDescription("Stale execution failed by resumed run"));
+        jobExecution.setEndTime(now);
+        jobRepository.update(jobExecution);
+    }
+
+    private String write(JobParameters jobParameters) {
+        StringWriter writer = new StringWriter();
+        try {
+            jobParametersConverter().getProperties(jobParameters).store(writer, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    private JobParameters read(String jobParameters) {
+        Properties properties = new Properties();
+        try {
+            properties.load(new StringReader(jobParameters));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return jobParametersConverter().getJobParameters(properties);
+    }
+
+    private static DefaultJobParametersConverter jobParametersConverter() {
+        DefaultJobParametersConverter converter = new DefaultJobParametersConverter();
+        // the default format drops the time of day, which would change the job key of execution_time
+        converter.setDateFormat(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ"));
+        return converter;
+    }
+}
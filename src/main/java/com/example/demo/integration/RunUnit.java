@@ -0,0 +1,14 @@
+package com.example.demo.integration;
+
+import lombok.Value;
+import org.springframework.batch.core.JobParameters;
+
+/**
+ * A job launched by a run that has not reached {@link UnitStage#DONE}, with the parameters it was first launched with.
+ */
+@Value
+public class RunUnit {
+    String jobName;
+    JobParameters jobParameters;
+    UnitStage stage;
+}
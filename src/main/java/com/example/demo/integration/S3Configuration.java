@@ -8,9 +8,14 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.transfer.TransferManager;
 import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import com.example.demo.metrics.S3Metrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Configuration
 public class S3Configuration {
@@ -20,25 +25,47 @@ public class S3Configuration {
     private final String s3Protocol;
     private final String s3AccessKey;
     private final String s3SecretKey;
+    private final boolean virtualThreads;
+    private final int maxConnections;
+    private final int transferThreads;
+    private final long multipartThreshold;
+    private final long minimumPartSize;
+    private final long rangedDownloadThreshold;
+    private final long rangeSize;
 
     public S3Configuration(
             @Value("${aws.s3.url}") String s3Url,
             @Value("${aws.s3.region}") String s3Region,
             @Value("${aws.s3.protocol}")String s3Protocol,
             @Value("${aws.s3.accessKey}") String s3AccessKey,
-            @Value("${aws.s3.secretKey}") String s3SecretKey) {
+            @Value("${aws.s3.secretKey}") String s3SecretKey,
+            @Value("${integration.virtualThreads}") boolean virtualThreads,
+            @Value("${aws.s3.maxConnections}") int maxConnections,
+            @Value("${aws.s3.transferThreads}") int transferThreads,
+            @Value("${aws.s3.multipartThreshold}") long multipartThreshold,
+            @Value("${aws.s3.minimumPartSize}") long minimumPartSize,
+            @Value("${aws.s3.rangedDownloadThreshold}") long rangedDownloadThreshold,
+            @Value("${aws.s3.rangeSize}") long rangeSize) {
         this.s3Url = s3Url;
         this.s3Region = s3Region;
         this.s3Protocol = s3Protocol;
         this.s3AccessKey = s3AccessKey;
         this.s3SecretKey = s3SecretKey;
+        this.virtualThreads = virtualThreads;
+        this.maxConnections = maxConnections;
+        this.transferThreads = transferThreads;
+        this.multipartThreshold = multipartThreshold;
+        this.minimumPartSize = minimumPartSize;
+        this.rangedDownloadThreshold = rangedDownloadThreshold;
+        this.rangeSize = rangeSize;
     }
 
     @Bean
-    public AmazonS3 amazonS3() {
+    public AmazonS3 amazonS3(S3Metrics s3Metrics) {
         AwsClientBuilder.EndpointConfiguration endpointConfiguration = new AwsClientBuilder.EndpointConfiguration(s3Url, s3Region);
         ClientConfiguration clientConfiguration = new ClientConfiguration();
         clientConfiguration.setProtocol(Protocol.valueOf(s3Protocol));
+        clientConfiguration.setMaxConnections(maxConnections);
         AWSCredentials credentials = new BasicAWSCredentials(s3AccessKey, s3SecretKey);
         AWSCredentialsProvider credentialsProvider = new AWSStaticCredentialsProvider(credentials);
         return AmazonS3ClientBuilder
@@ -47,12 +74,41 @@ public class S3Configuration {
                 .withPathStyleAccessEnabled(true)
                 .withClientConfiguration(clientConfiguration)
                 .withCredentials(credentialsProvider)
+                .withRequestHandlers(s3Metrics)
+                .build();
+    }
+
+    /**
+     * Runs the part uploads of the {@link TransferManager} and the ranges of {@link S3RangedDownloader}, so both share
+     * one bound on concurrent transfers.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService s3TransferExecutor() {
+        if (virtualThreads) {
+            // only the client's connection pool bounds concurrent parts, which is enough for virtual threads but not
+            // for the platform threads of a runtime without them
+            return VirtualThreadTaskExecutor.newThreadPerTaskExecutor("s3-transfer-", transferThreads);
+        }
+        return Executors.newFixedThreadPool(transferThreads, new CustomizableThreadFactory("s3-transfer-"));
+    }
+
+    @Bean
+    public TransferManager s3TransferManager(AmazonS3 amazonS3, ExecutorService s3TransferExecutor) {
+        // the part size grows past the minimum for objects that would need more than 10000 parts
+        return TransferManagerBuilder.standard()
+                .withS3Client(amazonS3)
+                .withExecutorFactory(() -> s3TransferExecutor)
+                .withShutDownThreadPools(false)
+                .withMultipartUploadThreshold(multipartThreshold)
+                .withMinimumUploadPartSize(minimumPartSize)
+                .withMultipartCopyThreshold(multipartThreshold)
+                .withMultipartCopyPartSize(minimumPartSize)
                 .build();
     }
 
     @Bean
-    public TransferManager s3TransferManager(AmazonS3 amazonS3) {
-        return TransferManagerBuilder.standard().withS3Client(amazonS3).build();
+    public S3RangedDownloader s3RangedDownloader(AmazonS3 amazonS3, ExecutorService s3TransferExecutor) {
+        return new S3RangedDownloader(amazonS3, s3TransferExecutor, rangedDownloadThreshold, rangeSize);
     }
 
 }
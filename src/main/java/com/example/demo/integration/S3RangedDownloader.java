@@ -0,0 +1,120 @@
+package com.example.demo.integration;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads S3 objects to local files, splitting objects of at least {@code rangedThreshold} bytes into ranges of
+ * {@code rangeSize} bytes fetched in parallel on the shared transfer executor and written at their offsets. Every range
+ * is requested with the object's ETag, so the ranges of an object replaced during the download are never mixed.
+ */
+@Slf4j
+public class S3RangedDownloader {
+
+    private final AmazonS3 amazonS3;
+    private final ExecutorService executor;
+    private final long rangedThreshold;
+    private final long rangeSize;
+
+    public S3RangedDownloader(AmazonS3 amazonS3, ExecutorService executor, long rangedThreshold, long rangeSize) {
+        this.amazonS3 = amazonS3;
+        this.executor = executor;
+        this.rangedThreshold = rangedThreshold;
+        this.rangeSize = rangeSize;
+    }
+
+    /**
+     * @return the file an object is downloaded to under {@code directory}
+     * @throws IllegalArgumentException if the key, absolute or climbing out with {@code ..}, resolves outside of it
+     */
+    public static File localFile(File directory, String key) {
+        Path root = directory.toPath().toAbsolutePath().normalize();
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IllegalArgumentException("S3 key " + key + " resolves outside of " + directory);
+        }
+        return path.toFile();
+    }
+
+    /**
+     * @param eTag the ETag the object was listed with, or {@code null} to accept whatever version is read
+     */
+    public void download(String bucket, String key, long size, String eTag, File file) throws InterruptedException, IOException {
+        if (size < rangedThreshold) {
+            if (amazonS3.getObject(request(bucket, key, eTag), file) == null) {
+                throw changed(bucket, key);
+            }
+            return;
+        }
+        log.debug("Downloading [{}/{}] in [{}] ranges", bucket, key, (size + rangeSize - 1) / rangeSize);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<Future<?>> ranges = new ArrayList<>();
+            for (long start = 0; start < size; start += rangeSize) {
+                long first = start;
+                long last = Math.min(start + rangeSize, size) - 1;
+                ranges.add(executor.submit(() -> {
+                    downloadRange(bucket, key, eTag, first, last, channel);
+                    return null;
+                }));
+            }
+            try {
+                for (Future<?> range : ranges) {
+                    range.get();
+                }
+            } catch (ExecutionException e) {
+                throw new IOException("Unable to download " + bucket + "/" + key, e.getCause());
+            } finally {
+                ranges.forEach(range -> range.cancel(true));
+            }
+        }
+    }
+
+    private void downloadRange(String bucket, String key, String eTag, long first, long last, FileChannel channel) throws IOException {
+        S3Object object = amazonS3.getObject(request(bucket, key, eTag).withRange(first, last));
+        if (object == null) {
+            throw changed(bucket, key);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        long position = first;
+        try (S3ObjectInputStream input = object.getObjectContent()) {
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+                while (bytes.hasRemaining()) {
+                    position += channel.write(bytes, position);
+                }
+            }
+        }
+        if (position != last + 1) {
+            throw new IOException("Range " + first + "-" + last + " of " + bucket + "/" + key + " ended at " + position);
+        }
+    }
+
+    private static GetObjectRequest request(String bucket, String key, String eTag) {
+        GetObjectRequest request = new GetObjectRequest(bucket, key);
+        if (eTag != null) {
+            request.withMatchingETagConstraint(eTag);
+        }
+        return request;
+    }
+
+    private static IllegalStateException changed(String bucket, String key) {
+        return new IllegalStateException("S3 object " + bucket + "/" + key + " changed since it was listed");
+    }
+}
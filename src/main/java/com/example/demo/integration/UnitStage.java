@@ -0,0 +1,12 @@
+package com.example.demo.integration;
+
+/**
+ * How far a unit of a run, one owner or one file, has got. Each flow only passes the stages that apply to it.
+ */
+public enum UnitStage {
+    LAUNCHED,
+    JOB_COMPLETED,
+    UPLOADED,
+    REMOTE_DELETED,
+    DONE
+}
@@ -0,0 +1,72 @@
+package com.example.demo.integration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs every task on a new virtual thread, with a semaphore instead of a pool bounding how many run at once. A task
+ * submitted while all permits are taken blocks the submitting thread, which holds back whatever feeds it the same way a
+ * full pool queue does. Virtual threads are looked up reflectively so the build still targets Java 17; on a runtime
+ * without them the tasks run on new platform threads instead, or on a fixed pool where nothing else bounds them.
+ */
+@Slf4j
+public class VirtualThreadTaskExecutor implements TaskExecutor {
+
+    private final ThreadFactory threadFactory;
+    private final Semaphore permits;
+
+    public VirtualThreadTaskExecutor(String threadNamePrefix, int maxConcurrency) {
+        this.threadFactory = threadFactory(threadNamePrefix);
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        permits.acquireUninterruptibly();
+        try {
+            threadFactory.newThread(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            }).start();
+        } catch (RuntimeException | Error e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @param fallbackThreads the size of the fixed pool used instead on a runtime without virtual threads, where a thread
+     *                        per task would be a platform thread
+     * @return an unbounded executor starting a virtual thread per task, for clients such as the S3
+     * {@code TransferManager} that bring their own limits and need an {@link ExecutorService}
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String threadNamePrefix, int fallbackThreads) {
+        ThreadFactory threadFactory = threadFactory(threadNamePrefix);
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(fallbackThreads, threadFactory);
+        }
+    }
+
+    private static ThreadFactory threadFactory(String threadNamePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads need Java 21, running [{}] tasks on platform threads", threadNamePrefix);
+            return new CustomizableThreadFactory(threadNamePrefix);
+        }
+    }
+}
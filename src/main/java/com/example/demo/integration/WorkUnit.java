@@ -0,0 +1,14 @@
+package com.example.demo.integration;
+
+import lombok.Value;
+
+/**
+ * A unit of work a manager queued in the {@code work_unit} table and a worker has claimed, with how many times it has
+ * been claimed so far.
+ */
+@Value
+public class WorkUnit {
+    long id;
+    String payload;
+    int attempts;
+}
@@ -0,0 +1,34 @@
+package com.example.demo.integration;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Duration;
+
+@Configuration
+public class WorkUnitConfiguration {
+
+    private final String role;
+    private final int leaseSeconds;
+    private final int maxAttempts;
+
+    public WorkUnitConfiguration(@Value("${run.role}") String role, @Value("${work.leaseSeconds}") int leaseSeconds, @Value("${work.maxAttempts}") int maxAttempts) {
+        this.role = role;
+        this.leaseSeconds = leaseSeconds;
+        this.maxAttempts = maxAttempts;
+    }
+
+    @Bean
+    public WorkUnits workUnits(JdbcTemplate jdbcTemplate, @Qualifier("taskScheduler") TaskScheduler taskScheduler) {
+        WorkUnits workUnits = new WorkUnits(jdbcTemplate, leaseSeconds, maxAttempts);
+        if ("worker".equals(role)) {
+            // renews well before the lease runs out, so a slow heartbeat is not mistaken for a dead worker
+            taskScheduler.scheduleWithFixedDelay(workUnits::heartbeat, Duration.ofSeconds(Math.max(1, leaseSeconds / 3)));
+        }
+        return workUnits;
+    }
+}
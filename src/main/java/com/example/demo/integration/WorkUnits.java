@@ -0,0 +1,115 @@
+package com.example.demo.integration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares units of work between JVMs through the {@code work_unit} table. A manager queues units, workers claim them
+ * one row at a time with {@code FOR UPDATE SKIP LOCKED} and hold a lease they renew while they work. A unit whose lease
+ * runs out, because its worker died, can be claimed again by any other worker until {@code maxAttempts} is reached.
+ */
+@Slf4j
+public class WorkUnits {
+
+    private static final String CLAIMABLE = "(status = 'PENDING' or (status = 'CLAIMED' and lease_expires_at < now()))";
+
+    private static final String ENQUEUE = "insert into work_unit (run_id, job_name, payload, weight, status) values (?, ?, ?, ?, 'PENDING')";
+
+    private static final String CLAIM = "update work_unit set status = 'CLAIMED', worker = ?, attempts = attempts + 1, "
+            + "lease_expires_at = now() + ? * interval '1 second', updated_at = now() "
+            + "where id = (select id from work_unit where job_name = ? and attempts < ? and " + CLAIMABLE + " "
+            + "order by weight desc, id limit 1 for update skip locked) "
+            + "returning id, payload, attempts";
+
+    private static final String HEARTBEAT = "update work_unit set lease_expires_at = now() + ? * interval '1 second' "
+            + "where worker = ? and status = 'CLAIMED'";
+
+    private static final String COMPLETE = "update work_unit set status = ?, lease_expires_at = null, updated_at = now() "
+            + "where id = ? and worker = ? and status = 'CLAIMED'";
+
+    // a unit is finished once completed or failed, or when its last lease ran out on the final attempt
+    private static final String UNFINISHED = "select count(*) from work_unit where %s = ? "
+            + "and (status = 'PENDING' or (status = 'CLAIMED' and (lease_expires_at >= now() or attempts < ?)))";
+
+    private static final String NOT_COMPLETED = "select count(*) from work_unit where run_id = ? and status <> 'COMPLETED'";
+
+    private final JdbcTemplate jdbcTemplate;
+    // pid@hostname alone repeats when a container restarts, and would renew and complete the dead JVM's units
+    private final String worker = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+    private final int leaseSeconds;
+    private final int maxAttempts;
+    private final AtomicInteger claimed = new AtomicInteger();
+
+    public WorkUnits(JdbcTemplate jdbcTemplate, int leaseSeconds, int maxAttempts) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.leaseSeconds = leaseSeconds;
+        this.maxAttempts = maxAttempts;
+    }
+
+    public void enqueue(String runId, String jobName, String payload, long weight) {
+        jdbcTemplate.update(ENQUEUE, runId, jobName, payload, weight);
+    }
+
+    /**
+     * @param capacity the units this worker can have in hand at once, beyond which a claimed unit would only wait in a
+     *                 queue while other workers sit idle
+     * @return the heaviest claimable unit of the job, or {@code null} if there is none right now or this worker already
+     * holds {@code capacity} units
+     */
+    public WorkUnit claim(String jobName, int capacity) {
+        if (claimed.get() >= capacity) {
+            return null;
+        }
+        List<WorkUnit> units = jdbcTemplate.query(CLAIM, (rs, rowNum) -> new WorkUnit(rs.getLong(1), rs.getString(2), rs.getInt(3)),
+                worker, leaseSeconds, jobName, maxAttempts);
+        if (units.isEmpty()) {
+            return null;
+        }
+        WorkUnit unit = units.get(0);
+        claimed.incrementAndGet();
+        log.info("Worker [{}] claimed unit [{}] of [{}], attempt [{}]", worker, unit.getId(), jobName, unit.getAttempts());
+        return unit;
+    }
+
+    public void heartbeat() {
+        int renewed = jdbcTemplate.update(HEARTBEAT, leaseSeconds, worker);
+        log.debug("Worker [{}] renewed [{}] leases", worker, renewed);
+    }
+
+    public void complete(long id, boolean succeeded) {
+        claimed.decrementAndGet();
+        if (jdbcTemplate.update(COMPLETE, succeeded ? "COMPLETED" : "FAILED", id, worker) == 0) {
+            log.warn("Worker [{}] lost its lease on unit [{}] before finishing it", worker, id);
+        }
+    }
+
+    /**
+     * @return whether this worker holds no units and every unit of the job is finished, so none can come its way
+     */
+    public boolean isDrained(String jobName) {
+        return claimed.get() == 0 && unfinished("job_name", jobName) == 0;
+    }
+
+    /**
+     * Waits for the workers to finish every unit of a run.
+     *
+     * @return the number of units of the run that did not complete
+     */
+    public long awaitRun(String runId, long pollInterval) throws InterruptedException {
+        long unfinished;
+        while ((unfinished = unfinished("run_id", runId)) > 0) {
+            log.info("Waiting for workers to finish [{}] units of run [{}]", unfinished, runId);
+            Thread.sleep(pollInterval);
+        }
+        return jdbcTemplate.queryForObject(NOT_COMPLETED, Long.class, runId);
+    }
+
+    private long unfinished(String column, String value) {
+        return jdbcTemplate.queryForObject(String.format(UNFINISHED, column), Long.class, value, maxAttempts);
+    }
+}
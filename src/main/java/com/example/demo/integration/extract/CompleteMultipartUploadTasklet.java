@@ -0,0 +1,49 @@
+package com.example.demo.integration.extract;
+
+import com.amazonaws.services.s3.AmazonS3;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+
+/**
+ * Completes the upload of an {@link S3MultipartItemWriter} step with the parts it sent. The writer state has to be
+ * promoted to the job execution context, see
+ * {@link org.springframework.batch.core.listener.ExecutionContextPromotionListener}.
+ */
+public class CompleteMultipartUploadTasklet implements Tasklet {
+
+    private final AmazonS3 amazonS3;
+    private final String bucket;
+    private final String key;
+    private final String writerName;
+
+    public CompleteMultipartUploadTasklet(AmazonS3 amazonS3, String bucket, String key, String writerName) {
+        this.amazonS3 = amazonS3;
+        this.bucket = bucket;
+        this.key = key;
+        this.writerName = writerName;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) {
+        ExecutionContext jobContext = chunkContext.getStepContext().getStepExecution().getJobExecution().getExecutionContext();
+        S3MultipartUpload upload = S3MultipartUpload.resume(amazonS3, bucket, key,
+                jobContext.getString(contextKey(S3MultipartItemWriter.UPLOAD_ID)),
+                jobContext.getString(contextKey(S3MultipartItemWriter.PARTS)));
+        upload.complete();
+        return RepeatStatus.FINISHED;
+    }
+
+    public static String[] contextKeys(String writerName) {
+        return new String[] {
+                writerName + "." + S3MultipartItemWriter.UPLOAD_ID,
+                writerName + "." + S3MultipartItemWriter.PARTS
+        };
+    }
+
+    private String contextKey(String key) {
+        return writerName + "." + key;
+    }
+}
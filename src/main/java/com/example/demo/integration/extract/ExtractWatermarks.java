@@ -0,0 +1,26 @@
+package com.example.demo.integration.extract;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Keeps the highest pet id extracted for every owner in the {@code extract_watermark} table. Pet ids only grow, so
+ * the unnamed pets above an owner's mark are exactly the ones no earlier run has extracted.
+ */
+@Slf4j
+public class ExtractWatermarks {
+
+    private static final String ADVANCE = "insert into extract_watermark (owner_id, last_pet_id) values (?, ?) "
+            + "on conflict (owner_id) do update set last_pet_id = greatest(extract_watermark.last_pet_id, excluded.last_pet_id), updated_at = now()";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ExtractWatermarks(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void advance(long ownerId, long lastPetId) {
+        jdbcTemplate.update(ADVANCE, ownerId, lastPetId);
+        log.info("Advanced extract watermark of owner [{}] to pet [{}]", ownerId, lastPetId);
+    }
+}
@@ -1,77 +1,134 @@
 package com.example.demo.integration.extract;
 
+import com.amazonaws.services.s3.AmazonS3;
 import com.example.demo.domain.Pet;
+import com.example.demo.integration.AdaptiveChunkSizePolicy;
+import com.example.demo.integration.CompressionCodec;
+import com.example.demo.integration.ExchangeFormat;
+import com.example.demo.integration.parquet.LocalOutputFile;
+import com.example.demo.metrics.ChunkMetricsListener;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.builder.SimpleJobBuilder;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.listener.ExecutionContextPromotionListener;
 import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStreamWriter;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.JpaCursorItemReader;
 import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
-import org.springframework.batch.item.file.transform.FieldExtractor;
 import org.springframework.batch.item.file.transform.LineAggregator;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.core.io.FileSystemResource;
 
 import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.io.File;
+import java.nio.file.Path;
 import java.util.Collections;
+import java.util.Map;
 
 @Configuration
 @Slf4j
+@Profile({"extraction", "jobs"})
 public class ExtractionBatchConfig {
 
+    public static final String OWNER_RANGE_METADATA = "owner-range",
+                               OWNERS_METADATA = "owners";
+
+    private static final String S3_WRITER_NAME = "petS3Writer",
+                                PET_READER_NAME = "petReader";
+
     private final EntityManagerFactory entityManagerFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final JobBuilderFactory jobBuilderFactory;
+    private final AmazonS3 amazonS3;
+    private final String inputBucketName;
+    private final boolean streamingUpload;
+    private final int partSize;
+    private final CompressionCodec codec;
+    private final int parquetRowGroupSize;
+    private final int chunkSize;
+    private final int maxChunkSize;
+    private final long targetChunkMillis;
+    private final DataSource dataSource;
+    private final boolean copyEngine;
 
-    public ExtractionBatchConfig(EntityManagerFactory entityManagerFactory, StepBuilderFactory stepBuilderFactory, JobBuilderFactory jobBuilderFactory) {
+    public ExtractionBatchConfig(EntityManagerFactory entityManagerFactory, StepBuilderFactory stepBuilderFactory, JobBuilderFactory jobBuilderFactory,
+                                 AmazonS3 amazonS3, @Value("${aws.s3.inputBucketName}") String inputBucketName,
+                                 @Value("${extract.streamingUpload}") boolean streamingUpload, @Value("${extract.partSize}") int partSize, @Value("${extract.codec}") CompressionCodec codec,
+                                 @Value("${extract.parquetRowGroupSize}") int parquetRowGroupSize,
+                                 @Value("${extract.chunkSize}") int chunkSize, @Value("${extract.maxChunkSize}") int maxChunkSize,
+                                 @Value("${extract.targetChunkMillis}") long targetChunkMillis,
+                                 DataSource dataSource, @Value("${extract.engine}") String engine, @Value("${extract.format}") ExchangeFormat format) {
         this.entityManagerFactory = entityManagerFactory;
         this.stepBuilderFactory = stepBuilderFactory;
         this.jobBuilderFactory = jobBuilderFactory;
+        this.amazonS3 = amazonS3;
+        this.inputBucketName = inputBucketName;
+        this.streamingUpload = streamingUpload;
+        this.partSize = partSize;
+        this.codec = codec;
+        this.parquetRowGroupSize = parquetRowGroupSize;
+        this.chunkSize = chunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.targetChunkMillis = targetChunkMillis;
+        this.dataSource = dataSource;
+        this.copyEngine = "copy".equals(engine);
+        if (copyEngine && format == ExchangeFormat.PARQUET) {
+            throw new IllegalStateException("extract.engine copy writes the CSV PostgreSQL produces, it cannot write " + format);
+        }
     }
 
     @Bean
-    public FieldExtractor<Pet> petFieldExtractor() {
-        BeanWrapperFieldExtractor<Pet> extractor = new BeanWrapperFieldExtractor<>();
-        extractor.setNames(new String[] {
-                "id",
-                "owner.id",
-                "name"
-        });
-        return extractor;
-    }
-
-    @Bean
-    public LineAggregator<Pet> petLineAggregator(@Qualifier("petFieldExtractor") FieldExtractor<Pet> fieldExtractor) {
-        DelimitedLineAggregator<Pet> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setFieldExtractor(fieldExtractor);
-        return lineAggregator;
+    public LineAggregator<Pet> petLineAggregator() {
+        return new PetLineAggregator();
     }
 
     @Bean
     @StepScope
-    public JpaCursorItemReader<Pet> petReader(@Value("#{jobParameters['owner_id']}") Long ownerId) {
+    public JpaCursorItemReader<Pet> petReader(@Value("#{jobParameters['owner_id']}") Long ownerId, @Value("#{jobParameters['format']}") ExchangeFormat format,
+                                              @Value("#{jobParameters['after_pet_id']}") Long afterPetId, @Value("#{jobParameters['max_pet_id']}") Long maxPetId,
+                                              @Value("#{jobParameters['last_owner_id']}") Long lastOwnerId) {
         log.debug("Creating reader for owner id [{}]", ownerId);
         JpaCursorItemReader<Pet> petReader = new JpaCursorItemReader<>();
-        petReader.setQueryString("from Pet where owner_id = :owner_id and name is null");
+        petReader.setName(PET_READER_NAME);
         petReader.setEntityManagerFactory(entityManagerFactory);
-        petReader.setParameterValues(Collections.singletonMap("owner_id", ownerId));
+        if (lastOwnerId != null) {
+            // a run of small owners sharing one extract, kept in owner order so the file follows its owner-range index
+            petReader.setQueryString("from Pet where owner_id between :owner_id and :last_owner_id and name is null order by owner_id, id");
+            petReader.setParameterValues(Map.of("owner_id", ownerId, "last_owner_id", lastOwnerId));
+        } else if (maxPetId != null) {
+            // incremental extract of the pets between the owner's watermark and the highest id seen when it was launched
+            petReader.setQueryString("from Pet where owner_id = :owner_id and name is null and id > :after_pet_id and id <= :max_pet_id");
+            petReader.setParameterValues(Map.of("owner_id", ownerId, "after_pet_id", afterPetId, "max_pet_id", maxPetId));
+        } else {
+            petReader.setQueryString("from Pet where owner_id = :owner_id and name is null");
+            petReader.setParameterValues(Collections.singletonMap("owner_id", ownerId));
+        }
+        // a Parquet file cannot be appended to, so a restart has to read every pet again
+        petReader.setSaveState(format != ExchangeFormat.PARQUET);
         return petReader;
     }
 
     @Bean
     @StepScope
-    public FlatFileItemWriter<Pet> petWriter(@Value("#{jobParameters['owner_id']}") Long ownerId, @Value("#{jobParameters['file']}") String file, @Qualifier("petLineAggregator") LineAggregator<Pet> lineAggregator) {
-        log.debug("Creating writer for owner id [{}]", ownerId);
+    public ItemStreamWriter<Pet> petWriter(@Value("#{jobParameters['owner_id']}") Long ownerId, @Value("#{jobParameters['file']}") String file,
+                                           @Value("#{jobParameters['format']}") ExchangeFormat format, @Qualifier("petLineAggregator") LineAggregator<Pet> lineAggregator) {
+        log.debug("Creating [{}] writer for owner id [{}]", format, ownerId);
+        if (format == ExchangeFormat.PARQUET) {
+            return new ParquetPetItemWriter(new LocalOutputFile(Path.of(file)), parquetCompression(), parquetRowGroupSize);
+        }
         FlatFileItemWriter<Pet> petWriter = new FlatFileItemWriter<>();
         petWriter.setResource(new FileSystemResource(file));
         petWriter.setLineAggregator(lineAggregator);
@@ -79,21 +136,127 @@ public class ExtractionBatchConfig {
         return petWriter;
     }
 
+    private CompressionCodecName parquetCompression() {
+        switch (codec) {
+            case GZIP:
+                return CompressionCodecName.GZIP;
+            case ZSTD:
+                return CompressionCodecName.ZSTD;
+            default:
+                return CompressionCodecName.UNCOMPRESSED;
+        }
+    }
+
+    @Bean(name = S3_WRITER_NAME)
+    @StepScope
+    public S3MultipartItemWriter<Pet> petS3Writer(@Value("#{jobParameters['owner_id']}") Long ownerId, @Value("#{jobParameters['file']}") String file, @Qualifier("petLineAggregator") LineAggregator<Pet> lineAggregator,
+                                                  @Value("#{jobParameters['last_owner_id']}") Long lastOwnerId, @Value("#{jobParameters['owners']}") Long owners) {
+        log.debug("Creating S3 writer for owner id [{}]", ownerId);
+        S3MultipartItemWriter<Pet> petWriter = new S3MultipartItemWriter<>(amazonS3, inputBucketName, codec.fileName(new File(file).getName()), partSize, lineAggregator);
+        petWriter.setName(S3_WRITER_NAME);
+        // the item count key of AbstractItemCountingItemStreamItemReader, a restart reads the pets not in a part again
+        petWriter.setReadCountKey(PET_READER_NAME + ".read.count");
+        petWriter.setCodec(codec);
+        if (lastOwnerId != null) {
+            petWriter.setUserMetadata(ownerRangeMetadata(ownerId, lastOwnerId, owners));
+        }
+        petWriter.setHeader("id,owner_id,name");
+        return petWriter;
+    }
+
+    public static Map<String, String> ownerRangeMetadata(long ownerId, long lastOwnerId, long owners) {
+        return Map.of(OWNER_RANGE_METADATA, ownerId + "-" + lastOwnerId, OWNERS_METADATA, Long.toString(owners));
+    }
+
+    @Bean
+    @StepScope
+    public CompleteMultipartUploadTasklet completeUploadTasklet(@Value("#{jobParameters['file']}") String file) {
+        return new CompleteMultipartUploadTasklet(amazonS3, inputBucketName, codec.fileName(new File(file).getName()), S3_WRITER_NAME);
+    }
+
     @Bean
-    public Step extractStep(@Qualifier("petReader") ItemReader petReader, @Qualifier("petWriter") ItemWriter petWriter) {
+    @StepScope
+    public CopyExtractTasklet copyExtractTasklet(@Value("#{jobParameters['owner_id']}") Long ownerId, @Value("#{jobParameters['file']}") String file,
+                                                 @Value("#{jobParameters['after_pet_id']}") Long afterPetId, @Value("#{jobParameters['max_pet_id']}") Long maxPetId,
+                                                 @Value("#{jobParameters['last_owner_id']}") Long lastOwnerId, @Value("#{jobParameters['owners']}") Long owners) {
+        // the same pets as petReader, the values are job parameter longs since COPY takes no bind parameters
+        String query;
+        if (lastOwnerId != null) {
+            query = String.format("select id, owner_id, name from pet where owner_id between %d and %d and name is null order by owner_id, id", ownerId, lastOwnerId);
+        } else if (maxPetId != null) {
+            query = String.format("select id, owner_id, name from pet where owner_id = %d and name is null and id > %d and id <= %d", ownerId, afterPetId, maxPetId);
+        } else {
+            query = String.format("select id, owner_id, name from pet where owner_id = %d and name is null", ownerId);
+        }
+        if (streamingUpload) {
+            return CopyExtractTasklet.toS3(dataSource, query, amazonS3, inputBucketName, codec.fileName(new File(file).getName()), partSize, codec,
+                    lastOwnerId != null ? ownerRangeMetadata(ownerId, lastOwnerId, owners) : Map.of());
+        }
+        return CopyExtractTasklet.toFile(dataSource, query, new File(file));
+    }
+
+    @Bean
+    @StepScope
+    public AdaptiveChunkSizePolicy extractChunkPolicy(MeterRegistry meterRegistry) {
+        return new AdaptiveChunkSizePolicy(chunkSize, maxChunkSize, targetChunkMillis, meterRegistry);
+    }
+
+    @Bean
+    public Step extractStep(@Qualifier("petReader") ItemReader petReader, @Qualifier("petWriter") ItemWriter petWriter, @Qualifier(S3_WRITER_NAME) ItemWriter petS3Writer,
+                            @Qualifier("extractChunkPolicy") AdaptiveChunkSizePolicy extractChunkPolicy, ChunkMetricsListener chunkMetricsListener) {
+        if (streamingUpload) {
+            // after-step listeners run in reverse order, so the writer sends its last part before its state is promoted
+            ExecutionContextPromotionListener uploadStatePromotionListener = new ExecutionContextPromotionListener();
+            uploadStatePromotionListener.setKeys(CompleteMultipartUploadTasklet.contextKeys(S3_WRITER_NAME));
+            return stepBuilderFactory.get("extract")
+                    .listener(uploadStatePromotionListener)
+                    .chunk(extractChunkPolicy)
+                    .reader(petReader)
+                    .writer(petS3Writer)
+                    .listener(extractChunkPolicy)
+                    .listener(chunkMetricsListener)
+                    .build();
+        }
         return stepBuilderFactory.get("extract")
-                .chunk(5)
+                .chunk(extractChunkPolicy)
                 .reader(petReader)
                 .writer(petWriter)
+                .listener(extractChunkPolicy)
+                .listener(chunkMetricsListener)
+                .build();
+    }
+
+    @Bean
+    public Step copyExtractStep(CopyExtractTasklet copyExtractTasklet) {
+        return stepBuilderFactory.get("copyExtract")
+                .tasklet(copyExtractTasklet)
+                .build();
+    }
+
+    @Bean
+    public Step completeUploadStep(CompleteMultipartUploadTasklet completeUploadTasklet) {
+        return stepBuilderFactory.get("completeUpload")
+                .tasklet(completeUploadTasklet)
                 .build();
     }
 
     @Bean(name = "extractJob")
-    public Job extractJob(@Qualifier("extractStep") Step extractStep) {
-        return jobBuilderFactory.get("extractJob")
+    public Job extractJob(@Qualifier("extractStep") Step extractStep, @Qualifier("copyExtractStep") Step copyExtractStep,
+                          @Qualifier("completeUploadStep") Step completeUploadStep) {
+        if (copyEngine) {
+            // the COPY step completes its own upload
+            return jobBuilderFactory.get("extractJob")
+                    .incrementer(new RunIdIncrementer())
+                    .start(copyExtractStep)
+                    .build();
+        }
+        SimpleJobBuilder extractJob = jobBuilderFactory.get("extractJob")
                 .incrementer(new RunIdIncrementer())
-                .start(extractStep)
-                .build();
+                .start(extractStep);
+        if (streamingUpload) {
+            extractJob.next(completeUploadStep);
+        }
+        return extractJob.build();
     }
 
 }
@@ -1,55 +1,132 @@
 package com.example.demo.integration.extract;
 
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.transfer.TransferManager;
 import com.amazonaws.services.s3.transfer.Upload;
-import com.example.demo.domain.Owner;
+import com.example.demo.integration.CompressionCodec;
+import com.example.demo.integration.ExchangeFormat;
 import com.example.demo.integration.FireOnceTrigger;
+import com.example.demo.integration.RunCheckpoints;
+import com.example.demo.integration.RunUnit;
+import com.example.demo.integration.UnitStage;
+import com.example.demo.integration.WorkUnit;
+import com.example.demo.integration.WorkUnits;
+import com.example.demo.integration.VirtualThreadTaskExecutor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.*;
 import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.integration.annotation.*;
 import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.ExecutorChannel;
 import org.springframework.integration.core.MessageSource;
-import org.springframework.integration.jpa.core.JpaExecutor;
-import org.springframework.integration.jpa.inbound.JpaPollingChannelAdapter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
-import javax.persistence.EntityManager;
 import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
+@Lazy(false)
 @Slf4j
 @Profile("extraction")
 public class ExtractionIntegrationConfig {
 
     private static final String OWNER_ID = "owner_id",
                                 FILE = "file",
-                                EXECUTION_TIME = "execution_time";
+                                FORMAT = "format",
+                                EXECUTION_TIME = "execution_time",
+                                AFTER_PET_ID = "after_pet_id",
+                                MAX_PET_ID = "max_pet_id",
+                                LAST_OWNER_ID = "last_owner_id",
+                                OWNERS = "owners",
+                                JOB_PARAMETERS = "jobParameters",
+                                JOB_STATUS = "jobStatus",
+                                WORK_UNIT_ID = "workUnitId";
 
-    private final EntityManager entityManager;
     private final Job extractJob;
     private final JobLauncher jobLauncher;
     private final TransferManager amazonS3TransferManager;
     private final String inputBucketName;
+    private final boolean streamingUpload;
+    private final CompressionCodec codec;
+    private final ExchangeFormat format;
+    private final int concurrency;
+    private final int queueCapacity;
+    private final boolean virtualThreads;
+    private final Timer launchQueueTimer;
+    private final boolean incremental;
+    private final PendingOwnerQuery pendingOwnerQuery;
+    private final ExtractWatermarks extractWatermarks;
+    private final RunCheckpoints runCheckpoints;
+    private final AtomicInteger failedUnits = new AtomicInteger();
+    private final WorkUnits workUnits;
+    private final String role;
+    private final String runId = UUID.randomUUID().toString();
+    private final long pollInterval;
 
-    public ExtractionIntegrationConfig(EntityManager entityManager, @Qualifier("extractJob") Job extractJob, JobLauncher jobLauncher, TransferManager amazonS3TransferManager, @Value("${aws.s3.inputBucketName}") String inputBucketName) {
-        this.entityManager = entityManager;
+    public ExtractionIntegrationConfig(@Qualifier("extractJob") Job extractJob, JobLauncher jobLauncher, TransferManager amazonS3TransferManager,
+                                       @Value("${aws.s3.inputBucketName}") String inputBucketName, @Value("${extract.streamingUpload}") boolean streamingUpload,
+                                       @Value("${extract.codec}") CompressionCodec codec, @Value("${extract.format}") ExchangeFormat format, @Value("${extract.concurrency}") int concurrency,
+                                       @Value("${extract.queueCapacity}") int queueCapacity, @Value("${integration.virtualThreads}") boolean virtualThreads, MeterRegistry meterRegistry,
+                                       JdbcTemplate jdbcTemplate, @Value("${extract.mode}") String mode, @Value("${extract.pageSize}") int pageSize,
+                                       @Value("${extract.coalesceRows}") long coalesceRows, JobRepository jobRepository,
+                                       @Value("${run.checkpoints}") boolean checkpoints, @Value("${run.resume}") boolean resume, WorkUnits workUnits,
+                                       @Value("${run.role}") String role, @Value("${work.pollInterval}") long pollInterval) {
         this.extractJob = extractJob;
         this.jobLauncher = jobLauncher;
         this.amazonS3TransferManager = amazonS3TransferManager;
         this.inputBucketName = inputBucketName;
-    }
-
-    public EntityManager getEntityManager() {
-        return entityManager;
+        this.streamingUpload = streamingUpload;
+        this.codec = codec;
+        this.format = format;
+        if (streamingUpload && format == ExchangeFormat.PARQUET) {
+            throw new IllegalStateException("Parquet extracts are written to a local file, extract.streamingUpload must be false");
+        }
+        this.concurrency = concurrency;
+        this.queueCapacity = queueCapacity;
+        this.virtualThreads = virtualThreads;
+        this.launchQueueTimer = Timer.builder("batch.job.launch.queue")
+                .description("Time from job parameters being built to the job being launched")
+                .tag("job", extractJob.getName())
+                .register(meterRegistry);
+        this.incremental = "incremental".equals(mode);
+        if (incremental && coalesceRows > 0) {
+            throw new IllegalStateException("Coalesced owners share one extract and cannot keep a watermark each, extract.coalesceRows must be 0 in incremental mode");
+        }
+        this.pendingOwnerQuery = new PendingOwnerQuery(jdbcTemplate, incremental, pageSize, coalesceRows);
+        this.extractWatermarks = new ExtractWatermarks(jdbcTemplate);
+        // a resumed run records its units too, or the ones it finishes would be resumed again
+        this.runCheckpoints = new RunCheckpoints(jdbcTemplate, jobRepository, checkpoints || resume);
+        this.workUnits = workUnits;
+        this.role = role;
+        this.pollInterval = pollInterval;
+        if (!"standalone".equals(role) && ("partitioned".equals(mode) || resume)) {
+            throw new IllegalStateException("run.role " + role + " shares owners between JVMs, it needs extract.mode owner or incremental and run.resume=false");
+        }
     }
 
     @Bean(name = "ownersChannel")
@@ -58,10 +135,27 @@ public class ExtractionIntegrationConfig {
     }
 
     @Bean
-    public JpaExecutor jpaExecutor() {
-        JpaExecutor jpaExecutor = new JpaExecutor(getEntityManager());
-        jpaExecutor.setJpaQuery("from Owner");
-        return jpaExecutor;
+    public TaskExecutor extractTaskExecutor() {
+        if (virtualThreads) {
+            return new VirtualThreadTaskExecutor("extract-", concurrency);
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setQueueCapacity(queueCapacity);
+        // a full queue runs the launch on the splitting thread, which stops it splitting until workers catch up
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("extract-");
+        return executor;
+    }
+
+    @Bean(name = "launchJobChannel")
+    public MessageChannel launchJobChannel(TaskExecutor extractTaskExecutor) {
+        if (concurrency > 1) {
+            log.info("Extracting up to [{}] owners concurrently", concurrency);
+            return new ExecutorChannel(extractTaskExecutor);
+        }
+        return new DirectChannel();
     }
 
     @Bean
@@ -70,60 +164,240 @@ public class ExtractionIntegrationConfig {
     }
 
     @Bean
-    @InboundChannelAdapter(value = "ownersChannel", poller = @Poller(trigger = "fireOnceTrigger"))
-    public MessageSource<?> ownerMessageSource(JpaExecutor jpaExecutor) {
-        return new JpaPollingChannelAdapter(jpaExecutor);
+    @ConditionalOnExpression("('${extract.mode}' == 'owner' or '${extract.mode}' == 'incremental') and !${run.resume} and '${run.role}' != 'worker'")
+    @InboundChannelAdapter(value = "ownersChannel", autoStartup = "${integration.autoStartup}", poller = @Poller(trigger = "fireOnceTrigger"))
+    public MessageSource<List<PendingOwner>> pendingOwnerMessageSource() {
+        return () -> new GenericMessage<>(pendingOwnerQuery.largestFirst());
+    }
+
+    @Filter(inputChannel = "ownersChannel", outputChannel = "ownerSplitterChannel", discardChannel = "noPendingOwnersChannel")
+    public boolean emptyPendingOwnersFilter(List<PendingOwner> owners) {
+        return !owners.isEmpty();
     }
 
-    @Splitter(inputChannel = "ownersChannel", outputChannel = "ownerChannel")
-    public List<Owner> ownersSplitter(List<Owner> owners) {
-        log.info("Splitting [{}] owners", owners.size());
+    @Splitter(inputChannel = "ownerSplitterChannel", outputChannel = "ownerDispatchChannel")
+    public List<PendingOwner> ownersSplitter(List<PendingOwner> owners) {
+        log.info("Splitting [{}] owners with unnamed pets", owners.size());
         return owners;
     }
 
+    @Router(inputChannel = "ownerDispatchChannel")
+    public String ownerDispatchRouter(PendingOwner owner) {
+        return "manager".equals(role) ? "enqueueOwnerChannel" : "ownerChannel";
+    }
+
+    @ServiceActivator(inputChannel = "enqueueOwnerChannel", outputChannel = "endChannel")
+    public PendingOwner enqueueOwner(PendingOwner owner) {
+        workUnits.enqueue(runId, extractJob.getName(), owner.encode(), owner.getPendingPets());
+        return owner;
+    }
+
+    @Bean
+    @ConditionalOnExpression("'${run.role}' == 'worker'")
+    @InboundChannelAdapter(value = "ownerChannel", autoStartup = "${integration.autoStartup}", poller = @Poller(fixedDelay = "${work.pollInterval}", maxMessagesPerPoll = "-1"))
+    public MessageSource<PendingOwner> workUnitMessageSource() {
+        return () -> {
+            // one unit per extract worker, the rest stay claimable by other JVMs
+            WorkUnit unit = workUnits.claim(extractJob.getName(), concurrency);
+            if (unit == null) {
+                if (workUnits.isDrained(extractJob.getName())) {
+                    log.info("No owners left for worker, [{}] did not complete, shutting down JVM", failedUnits.get());
+                    System.exit(failedUnits.get() == 0 ? 0 : 1); // kills the JVM when all integration steps are finished, this allows single run scheduling
+                }
+                return null;
+            }
+            return MessageBuilder.withPayload(PendingOwner.decode(unit.getPayload()))
+                    .setHeader(WORK_UNIT_ID, unit.getId())
+                    .build();
+        };
+    }
+
+    @ServiceActivator(inputChannel = "noPendingOwnersChannel")
+    public void noPendingOwners() {
+        log.info("No owners to extract, shutting down JVM");
+        System.exit(0); // kills the JVM when all integration steps are finished, this allows single run scheduling
+    }
+
     @Transformer(inputChannel = "ownerChannel", outputChannel = "launchJobChannel")
-    public JobParameters ownersToJobParametersTransformer(Owner owner) {
-        log.info("Building job parameters for owner [{}]", owner.getId());
-        return new JobParametersBuilder()
-                .addLong(OWNER_ID, owner.getId())
-                .addString(FILE, String.format("input/%s-%s.csv", owner.getId(), System.currentTimeMillis()))
-                .addDate(EXECUTION_TIME, new Date())
-                .toJobParameters();
+    public JobParameters ownerToJobParametersTransformer(PendingOwner owner) {
+        JobParametersBuilder jobParameters = new JobParametersBuilder()
+                .addLong(OWNER_ID, owner.getOwnerId())
+                .addString(FORMAT, format.parameter())
+                .addDate(EXECUTION_TIME, new Date());
+        if (owner.isCoalesced()) {
+            log.info("Building job parameters for [{}] pets of [{}] owners [{}..{}]", owner.getPendingPets(), owner.getOwners(), owner.getOwnerId(), owner.getLastOwnerId());
+            jobParameters.addLong(LAST_OWNER_ID, owner.getLastOwnerId())
+                    .addLong(OWNERS, (long) owner.getOwners())
+                    .addString(FILE, String.format("input/%s-%s-%s%s", owner.getOwnerId(), owner.getLastOwnerId(), System.currentTimeMillis(), format.getExtension()));
+        } else {
+            log.info("Building job parameters for [{}] pets of owner [{}]", owner.getPendingPets(), owner.getOwnerId());
+            jobParameters.addString(FILE, String.format("input/%s-%s%s", owner.getOwnerId(), System.currentTimeMillis(), format.getExtension()));
+        }
+        if (incremental) {
+            jobParameters.addLong(AFTER_PET_ID, owner.getAfterPetId())
+                    .addLong(MAX_PET_ID, owner.getMaxPetId());
+        }
+        return jobParameters.toJobParameters();
+    }
+
+    @Bean
+    @ConditionalOnExpression("('${extract.mode}' == 'owner' or '${extract.mode}' == 'incremental') and ${run.resume}")
+    @InboundChannelAdapter(value = "resumeUnitsChannel", autoStartup = "${integration.autoStartup}", poller = @Poller(trigger = "fireOnceTrigger"))
+    public MessageSource<List<RunUnit>> resumeUnitMessageSource() {
+        return () -> new GenericMessage<>(runCheckpoints.unfinished(extractJob.getName()));
+    }
+
+    @Filter(inputChannel = "resumeUnitsChannel", outputChannel = "resumeUnitSplitterChannel", discardChannel = "noPendingOwnersChannel")
+    public boolean emptyResumeUnitsFilter(List<RunUnit> units) {
+        return !units.isEmpty();
+    }
+
+    @Splitter(inputChannel = "resumeUnitSplitterChannel", outputChannel = "resumeUnitChannel")
+    public List<RunUnit> resumeUnitSplitter(List<RunUnit> units) {
+        log.info("Splitting [{}] unfinished units", units.size());
+        return units;
     }
 
-    @ServiceActivator(inputChannel = "launchJobChannel", outputChannel = "transferToS3Channel")
-    public File launchExtractJob(JobParameters jobParameters) throws JobExecutionException {
+    @Router(inputChannel = "resumeUnitChannel")
+    public String resumeUnitRouter(RunUnit unit) {
+        // every unit carries on from the stage after the last one it finished
+        switch (unit.getStage()) {
+            case LAUNCHED:
+                return "resumeLaunchChannel";
+            case JOB_COMPLETED:
+                return "resumeExtractedChannel";
+            default:
+                return "resumeUploadedChannel";
+        }
+    }
+
+    @Transformer(inputChannel = "resumeLaunchChannel", outputChannel = "launchJobChannel")
+    public JobParameters resumeLaunch(RunUnit unit) {
+        runCheckpoints.failStaleExecution(unit.getJobName(), unit.getJobParameters());
+        return unit.getJobParameters();
+    }
+
+    // a service activator, unlike a transformer, adds the splitter's sequence headers to the message it returns
+    @ServiceActivator(inputChannel = "resumeExtractedChannel", outputChannel = "extractedChannel")
+    public Message<File> resumeExtracted(RunUnit unit) {
+        log.info("Resuming upload of extract for parameters [{}]", unit.getJobParameters());
+        return extracted(unit.getJobParameters(), BatchStatus.COMPLETED);
+    }
+
+    @ServiceActivator(inputChannel = "resumeUploadedChannel", outputChannel = "deleteLocalFileChannel")
+    public Message<File> resumeUploaded(RunUnit unit) {
+        log.info("Resuming clean up of extract for parameters [{}]", unit.getJobParameters());
+        return extracted(unit.getJobParameters(), BatchStatus.COMPLETED);
+    }
+
+    @ServiceActivator(inputChannel = "launchJobChannel", outputChannel = "extractedChannel")
+    public Message<File> launchExtractJob(JobParameters jobParameters, @Header(MessageHeaders.TIMESTAMP) long timestamp) throws JobExecutionException {
+        launchQueueTimer.record(Duration.ofMillis(System.currentTimeMillis() - timestamp));
         log.info("Launching extractJob with parameters [{}]", jobParameters);
+        runCheckpoints.record(extractJob.getName(), jobParameters, UnitStage.LAUNCHED);
         JobExecution jobExecution = jobLauncher.run(extractJob, jobParameters);
         log.info("Job execution [{}] ended at [{}] with status [{}] for parameters [{}]",
                 jobExecution.getId(), jobExecution.getEndTime(), jobExecution.getStatus(), jobExecution.getJobParameters());
-        return new File(jobParameters.getString(FILE));
+        if (jobExecution.getStatus() == BatchStatus.COMPLETED) {
+            runCheckpoints.record(extractJob.getName(), jobParameters, UnitStage.JOB_COMPLETED);
+        }
+        return extracted(jobParameters, jobExecution.getStatus());
+    }
+
+    private Message<File> extracted(JobParameters jobParameters, BatchStatus status) {
+        return MessageBuilder.withPayload(new File(jobParameters.getString(FILE)))
+                .setHeader(JOB_PARAMETERS, jobParameters)
+                .setHeader(JOB_STATUS, status)
+                .build();
+    }
+
+    @Router(inputChannel = "extractedChannel")
+    public String extractedFileRouter(File file, @Header(JOB_STATUS) BatchStatus status) {
+        if (status != BatchStatus.COMPLETED) {
+            return "failedExtractChannel";
+        }
+        // the streaming writer has already uploaded the extract, there is no local file to transfer
+        return streamingUpload ? "uploadedChannel" : "transferToS3Channel";
     }
 
-    @ServiceActivator(inputChannel = "transferToS3Channel", outputChannel = "deleteLocalFileChannel")
-    public File transferToS3(File file) throws InterruptedException {
-        log.info("Uploading [{}] to [{}] S3 bucket", file.getName(), inputBucketName);
-        PutObjectRequest request = new PutObjectRequest(inputBucketName, file.getName(), file);
+    @ServiceActivator(inputChannel = "failedExtractChannel", outputChannel = "unitDoneChannel")
+    public File failedExtract(File file) {
+        // a partial extract is not uploaded, and is kept for the job's restart to append to
+        log.warn("Keeping [{}] of a job that did not complete", file.getName());
+        failedUnits.incrementAndGet();
+        return file;
+    }
+
+    @ServiceActivator(inputChannel = "transferToS3Channel", outputChannel = "uploadedChannel")
+    public File transferToS3(File file, @Header(name = JOB_PARAMETERS, required = false) JobParameters jobParameters) throws InterruptedException, IOException {
+        // Parquet compresses its own pages
+        File compressed = ExchangeFormat.forName(file.getName()) == ExchangeFormat.PARQUET ? file : codec.compress(file);
+        log.info("Uploading [{}] to [{}] S3 bucket", compressed.getName(), inputBucketName);
+        PutObjectRequest request = new PutObjectRequest(inputBucketName, compressed.getName(), compressed);
+        if (jobParameters != null && jobParameters.getLong(LAST_OWNER_ID) != null) {
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setUserMetadata(ExtractionBatchConfig.ownerRangeMetadata(jobParameters.getLong(OWNER_ID), jobParameters.getLong(LAST_OWNER_ID), jobParameters.getLong(OWNERS)));
+            request.setMetadata(metadata);
+        }
         Upload upload = amazonS3TransferManager.upload(request);
-        upload.waitForCompletion();
+        try {
+            upload.waitForCompletion();
+        } finally {
+            if (compressed != file) {
+                compressed.delete();
+            }
+        }
+        return file;
+    }
+
+    @ServiceActivator(inputChannel = "uploadedChannel", outputChannel = "deleteLocalFileChannel")
+    public File extractUploaded(File file, @Header(name = JOB_PARAMETERS, required = false) JobParameters jobParameters) {
+        if (jobParameters == null) {
+            return file;
+        }
+        Long maxPetId = jobParameters.getLong(MAX_PET_ID);
+        if (maxPetId != null) {
+            // the watermark only moves once the extract has reached S3
+            extractWatermarks.advance(jobParameters.getLong(OWNER_ID), maxPetId);
+        }
+        runCheckpoints.record(extractJob.getName(), jobParameters, UnitStage.UPLOADED);
         return file;
     }
 
-    @ServiceActivator(inputChannel = "deleteLocalFileChannel", outputChannel = "endChannel")
-    public Boolean deleteLocalFile(File file) {
+    @ServiceActivator(inputChannel = "deleteLocalFileChannel", outputChannel = "unitDoneChannel")
+    public Boolean deleteLocalFile(File file, @Header(name = JOB_PARAMETERS, required = false) JobParameters jobParameters) {
         log.info("Deleting file [{}]", file.getName());
-        return file.delete();
+        boolean deleted = file.delete();
+        if (jobParameters != null) {
+            runCheckpoints.record(extractJob.getName(), jobParameters, UnitStage.DONE);
+        }
+        return deleted;
+    }
+
+    @Router(inputChannel = "unitDoneChannel")
+    public String unitDoneRouter(Object result, @Header(name = WORK_UNIT_ID, required = false) Long workUnitId) {
+        // a worker's units were not split from a list, there is nothing to aggregate them into
+        return workUnitId == null ? "endChannel" : "workUnitDoneChannel";
+    }
+
+    @ServiceActivator(inputChannel = "workUnitDoneChannel")
+    public void workUnitDone(@Header(WORK_UNIT_ID) long workUnitId, @Header(JOB_STATUS) BatchStatus status) {
+        workUnits.complete(workUnitId, status == BatchStatus.COMPLETED);
     }
 
     @Aggregator(inputChannel = "endChannel")
-    public void shutdown() {
-        log.info("Integration flow complete, shutting down JVM");
-        System.exit(0); // kills the JVM when all integration steps are finished, this allows single run scheduling
+    public void shutdown(List<Object> results) throws InterruptedException {
+        if ("manager".equals(role)) {
+            log.info("Queued [{}] owners for workers as run [{}]", results.size(), runId);
+            failedUnits.addAndGet((int) workUnits.awaitRun(runId, pollInterval));
+        }
+        log.info("Integration flow complete for [{}] owners, [{}] did not complete, shutting down JVM", results.size(), failedUnits.get());
+        System.exit(failedUnits.get() == 0 ? 0 : 1); // kills the JVM when all integration steps are finished, this allows single run scheduling
     }
 
     @ServiceActivator(inputChannel = "application.errorChannel")
     public void handleError(Exception ex) {
         log.error("Error occurred in integration flow, shutting down JVM", ex);
-        System.exit(0); // kills the JVM when all integration steps are finished, this allows single run scheduling
+        System.exit(1); // a non-zero status tells the scheduler the run has unfinished units to resume
     }
 }
@@ -0,0 +1,78 @@
+package com.example.demo.integration.extract;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the unnamed pets of an owner range a page at a time, ordered by owner then id. Every page starts after the last
+ * key read rather than at an offset, and that key is what a restart continues from.
+ */
+public class KeysetPetItemReader extends ItemStreamSupport implements ItemStreamReader<PetKey> {
+
+    private static final String LAST_OWNER_ID = "last.owner.id",
+                                LAST_ID = "last.id";
+
+    private static final String PAGE_QUERY = "select id, owner_id from pet" +
+            " where name is null and owner_id between ? and ? and (owner_id, id) > (?, ?)" +
+            " order by owner_id, id limit ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long minOwnerId;
+    private final long maxOwnerId;
+    private final int pageSize;
+
+    private long lastOwnerId;
+    private long lastId;
+    private List<PetKey> page = Collections.emptyList();
+    private int index;
+    private boolean lastPage;
+
+    public KeysetPetItemReader(JdbcTemplate jdbcTemplate, long minOwnerId, long maxOwnerId, int pageSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.minOwnerId = minOwnerId;
+        this.maxOwnerId = maxOwnerId;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+        super.open(executionContext);
+        lastOwnerId = executionContext.getLong(getExecutionContextKey(LAST_OWNER_ID), minOwnerId);
+        lastId = executionContext.getLong(getExecutionContextKey(LAST_ID), Long.MIN_VALUE);
+        page = Collections.emptyList();
+        index = 0;
+        lastPage = false;
+    }
+
+    @Override
+    public PetKey read() {
+        if (index == page.size()) {
+            if (lastPage) {
+                return null;
+            }
+            page = jdbcTemplate.query(PAGE_QUERY, (rs, rowNum) -> new PetKey(rs.getLong(1), rs.getLong(2)),
+                    minOwnerId, maxOwnerId, lastOwnerId, lastId, pageSize);
+            index = 0;
+            lastPage = page.size() < pageSize;
+            if (page.isEmpty()) {
+                return null;
+            }
+        }
+        PetKey pet = page.get(index++);
+        lastOwnerId = pet.getOwnerId();
+        lastId = pet.getId();
+        return pet;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+        super.update(executionContext);
+        executionContext.putLong(getExecutionContextKey(LAST_OWNER_ID), lastOwnerId);
+        executionContext.putLong(getExecutionContextKey(LAST_ID), lastId);
+    }
+}
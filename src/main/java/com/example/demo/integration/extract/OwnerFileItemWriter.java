@@ -0,0 +1,124 @@
+package com.example.demo.integration.extract;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.file.transform.LineAggregator;
+import org.springframework.batch.item.support.AbstractItemStreamItemWriter;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes pets ordered by owner into one {@code <owner>-<suffix>.csv} file per owner, starting a new file whenever the
+ * owner changes. The open file and its committed length are saved so a restart truncates whatever was written after
+ * the last commit and carries on appending.
+ */
+public class OwnerFileItemWriter extends AbstractItemStreamItemWriter<PetKey> {
+
+    private static final String CURRENT_OWNER_ID = "current.owner.id",
+                                CURRENT_POSITION = "current.position";
+
+    private final File directory;
+    private final String suffix;
+    private final LineAggregator<PetKey> lineAggregator;
+
+    private String header;
+    private Long currentOwnerId;
+    private FileChannel channel;
+    private Writer writer;
+
+    public OwnerFileItemWriter(File directory, String suffix, LineAggregator<PetKey> lineAggregator) {
+        this.directory = directory;
+        this.suffix = suffix;
+        this.lineAggregator = lineAggregator;
+    }
+
+    public void setHeader(String header) {
+        this.header = header;
+    }
+
+    public File fileFor(long ownerId) {
+        return new File(directory, String.format("%s-%s.csv", ownerId, suffix));
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+        super.open(executionContext);
+        if (executionContext.containsKey(getExecutionContextKey(CURRENT_OWNER_ID))) {
+            currentOwnerId = executionContext.getLong(getExecutionContextKey(CURRENT_OWNER_ID));
+            try {
+                openChannel(fileFor(currentOwnerId), false);
+                channel.truncate(executionContext.getLong(getExecutionContextKey(CURRENT_POSITION)));
+                channel.position(channel.size());
+            } catch (IOException e) {
+                throw new ItemStreamException("Unable to reopen extract file for owner " + currentOwnerId, e);
+            }
+        }
+    }
+
+    @Override
+    public void write(List<? extends PetKey> items) throws IOException {
+        for (PetKey pet : items) {
+            if (currentOwnerId == null || currentOwnerId != pet.getOwnerId()) {
+                closeChannel();
+                currentOwnerId = pet.getOwnerId();
+                openChannel(fileFor(currentOwnerId), true);
+                if (header != null) {
+                    writeLine(header);
+                }
+            }
+            writeLine(lineAggregator.aggregate(pet));
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+        super.update(executionContext);
+        if (currentOwnerId == null) {
+            return;
+        }
+        try {
+            writer.flush();
+            executionContext.putLong(getExecutionContextKey(CURRENT_OWNER_ID), currentOwnerId);
+            executionContext.putLong(getExecutionContextKey(CURRENT_POSITION), channel.position());
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to flush extract file for owner " + currentOwnerId, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        try {
+            closeChannel();
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to close extract file for owner " + currentOwnerId, e);
+        }
+        currentOwnerId = null;
+    }
+
+    private void openChannel(File file, boolean truncate) throws IOException {
+        directory.mkdirs();
+        channel = truncate
+                ? FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                : FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+    }
+
+    private void closeChannel() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+            channel = null;
+        }
+    }
+
+    private void writeLine(String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+    }
+}
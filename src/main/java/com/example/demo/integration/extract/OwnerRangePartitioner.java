@@ -0,0 +1,63 @@
+package com.example.demo.integration.extract;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the owners with unnamed pets into contiguous {@code owner_id} ranges holding roughly the same number of pets,
+ * so every pet of an owner is extracted by the same partition.
+ */
+@Slf4j
+public class OwnerRangePartitioner implements Partitioner {
+
+    public static final String MIN_OWNER_ID = "minOwnerId",
+                               MAX_OWNER_ID = "maxOwnerId";
+
+    private static final String PENDING_PETS_BY_OWNER = "select owner_id, count(*) from pet where name is null group by owner_id order by owner_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public OwnerRangePartitioner(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        List<long[]> owners = jdbcTemplate.query(PENDING_PETS_BY_OWNER, (rs, rowNum) -> new long[] { rs.getLong(1), rs.getLong(2) });
+        long total = owners.stream().mapToLong(owner -> owner[1]).sum();
+        long target = Math.max(1, (total + gridSize - 1) / gridSize);
+
+        Map<String, ExecutionContext> partitions = new HashMap<>();
+        long pets = 0;
+        Long minOwnerId = null;
+        for (long[] owner : owners) {
+            if (minOwnerId == null) {
+                minOwnerId = owner[0];
+            }
+            pets += owner[1];
+            if (pets >= target) {
+                partitions.put("partition" + partitions.size(), range(minOwnerId, owner[0]));
+                pets = 0;
+                minOwnerId = null;
+            }
+        }
+        if (minOwnerId != null) {
+            partitions.put("partition" + partitions.size(), range(minOwnerId, owners.get(owners.size() - 1)[0]));
+        }
+        log.info("Partitioned [{}] pets of [{}] owners into [{}] owner ranges", total, owners.size(), partitions.size());
+        return partitions;
+    }
+
+    private ExecutionContext range(long minOwnerId, long maxOwnerId) {
+        ExecutionContext context = new ExecutionContext();
+        context.putLong(MIN_OWNER_ID, minOwnerId);
+        context.putLong(MAX_OWNER_ID, maxOwnerId);
+        return context;
+    }
+}
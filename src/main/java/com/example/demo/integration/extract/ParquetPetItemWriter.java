@@ -0,0 +1,82 @@
+package com.example.demo.integration.extract;
+
+import com.example.demo.domain.Pet;
+import com.example.demo.integration.parquet.PetParquet;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.OutputFile;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.support.AbstractItemStreamItemWriter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes pets to a Parquet file with dictionary encoded columns. The file is only readable once the footer is written
+ * on close, so it cannot be appended to after a failure: a restarted step writes it again from the first pet, which
+ * needs a reader that does not save its state.
+ */
+public class ParquetPetItemWriter extends AbstractItemStreamItemWriter<Pet> {
+
+    private final OutputFile outputFile;
+    private final CompressionCodecName compression;
+    private final int rowGroupSize;
+    private final SimpleGroupFactory groupFactory = new SimpleGroupFactory(PetParquet.SCHEMA);
+
+    private ParquetWriter<Group> writer;
+
+    public ParquetPetItemWriter(OutputFile outputFile, CompressionCodecName compression, int rowGroupSize) {
+        this.outputFile = outputFile;
+        this.compression = compression;
+        this.rowGroupSize = rowGroupSize;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+        super.open(executionContext);
+        try {
+            writer = ExampleParquetWriter.builder(outputFile)
+                    .withType(PetParquet.SCHEMA)
+                    .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+                    .withCompressionCodec(compression)
+                    .withRowGroupSize(rowGroupSize)
+                    .withDictionaryEncoding(true)
+                    .build();
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to open Parquet file " + outputFile.getPath(), e);
+        }
+    }
+
+    @Override
+    public void write(List<? extends Pet> items) throws IOException {
+        for (Pet pet : items) {
+            Group group = groupFactory.newGroup()
+                    .append(PetParquet.ID, pet.getId())
+                    .append(PetParquet.OWNER_ID, pet.getOwner().getId());
+            if (pet.getName() != null) {
+                group.append(PetParquet.NAME, pet.getName());
+            }
+            writer.write(group);
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to close Parquet file " + outputFile.getPath(), e);
+        } finally {
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.demo.integration.extract;
+
+import com.example.demo.integration.AdaptiveChunkSizePolicy;
+import com.example.demo.metrics.ChunkMetricsListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.item.file.transform.LineAggregator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.io.File;
+import java.util.Date;
+
+/**
+ * Extracts every owner in one job: the pet table is split into owner ranges that are read with keyset pagination on
+ * {@code extract.concurrency} threads, each partition writing one file per owner.
+ */
+@Configuration
+@Slf4j
+@Profile({"extraction", "jobs"})
+@ConditionalOnProperty(name = "extract.mode", havingValue = "partitioned")
+public class PartitionedExtractionBatchConfig {
+
+    public static final String DIRECTORY = "input";
+
+    private final StepBuilderFactory stepBuilderFactory;
+    private final JobBuilderFactory jobBuilderFactory;
+    private final JdbcTemplate jdbcTemplate;
+    private final int concurrency;
+    private final int partitions;
+    private final int pageSize;
+
+    public PartitionedExtractionBatchConfig(StepBuilderFactory stepBuilderFactory, JobBuilderFactory jobBuilderFactory, JdbcTemplate jdbcTemplate,
+                                            @Value("${extract.concurrency}") int concurrency, @Value("${extract.partitions}") int partitions,
+                                            @Value("${extract.pageSize}") int pageSize) {
+        this.stepBuilderFactory = stepBuilderFactory;
+        this.jobBuilderFactory = jobBuilderFactory;
+        this.jdbcTemplate = jdbcTemplate;
+        this.concurrency = concurrency;
+        this.partitions = partitions;
+        this.pageSize = pageSize;
+    }
+
+    @Bean
+    public LineAggregator<PetKey> petKeyLineAggregator() {
+        return pet -> PetLineAggregator.format(pet.getId(), pet.getOwnerId(), null);
+    }
+
+    @Bean
+    public OwnerRangePartitioner ownerRangePartitioner() {
+        return new OwnerRangePartitioner(jdbcTemplate);
+    }
+
+    @Bean
+    @StepScope
+    public KeysetPetItemReader keysetPetReader(@Value("#{stepExecutionContext['minOwnerId']}") Long minOwnerId, @Value("#{stepExecutionContext['maxOwnerId']}") Long maxOwnerId) {
+        log.debug("Creating keyset reader for owner ids [{}] to [{}]", minOwnerId, maxOwnerId);
+        KeysetPetItemReader reader = new KeysetPetItemReader(jdbcTemplate, minOwnerId, maxOwnerId, pageSize);
+        reader.setName("keysetPetReader");
+        return reader;
+    }
+
+    @Bean
+    @StepScope
+    public OwnerFileItemWriter ownerFileWriter(@Value("#{jobParameters['execution_time']}") Date executionTime, @Qualifier("petKeyLineAggregator") LineAggregator<PetKey> lineAggregator) {
+        OwnerFileItemWriter writer = new OwnerFileItemWriter(new File(DIRECTORY), String.valueOf(executionTime.getTime()), lineAggregator);
+        writer.setName("ownerFileWriter");
+        writer.setHeader("id,owner_id,name");
+        return writer;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor partitionTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setThreadNamePrefix("partition-");
+        return executor;
+    }
+
+    @Bean
+    public Step extractKeysetStep(KeysetPetItemReader keysetPetReader, OwnerFileItemWriter ownerFileWriter,
+                                  @Qualifier("extractChunkPolicy") AdaptiveChunkSizePolicy extractChunkPolicy, ChunkMetricsListener chunkMetricsListener) {
+        return stepBuilderFactory.get("extractKeyset")
+                .<PetKey, PetKey> chunk(extractChunkPolicy)
+                .reader(keysetPetReader)
+                .writer(ownerFileWriter)
+                .listener(extractChunkPolicy)
+                .listener(chunkMetricsListener)
+                .build();
+    }
+
+    @Bean
+    public Step extractPartitionedStep(OwnerRangePartitioner ownerRangePartitioner, @Qualifier("extractKeysetStep") Step extractKeysetStep,
+                                       @Qualifier("partitionTaskExecutor") ThreadPoolTaskExecutor partitionTaskExecutor) {
+        return stepBuilderFactory.get("extractPartitioned")
+                .partitioner("extractKeyset", ownerRangePartitioner)
+                .step(extractKeysetStep)
+                .gridSize(partitions)
+                .taskExecutor(partitionTaskExecutor)
+                .build();
+    }
+
+    @Bean(name = "extractPartitionedJob")
+    public Job extractPartitionedJob(@Qualifier("extractPartitionedStep") Step extractPartitionedStep) {
+        return jobBuilderFactory.get("extractPartitionedJob")
+                .incrementer(new RunIdIncrementer())
+                .start(extractPartitionedStep)
+                .build();
+    }
+}
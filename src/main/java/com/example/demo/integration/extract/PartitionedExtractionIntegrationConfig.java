@@ -0,0 +1,109 @@
+package com.example.demo.integration.extract;
+
+import com.example.demo.integration.RunCheckpoints;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.*;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.integration.annotation.*;
+import org.springframework.integration.core.MessageSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.support.GenericMessage;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Runs {@code extractPartitionedJob} once and hands every owner file it wrote to the upload part of the extraction flow.
+ * A resumed run restarts the last job instance with its original parameters, or only uploads the files it left behind
+ * if that instance had completed.
+ */
+@Configuration
+@Lazy(false)
+@Slf4j
+@Profile("extraction")
+@ConditionalOnProperty(name = "extract.mode", havingValue = "partitioned")
+public class PartitionedExtractionIntegrationConfig {
+
+    private static final String EXECUTION_TIME = "execution_time";
+
+    private final Job extractPartitionedJob;
+    private final JobLauncher jobLauncher;
+    private final JobExplorer jobExplorer;
+    private final RunCheckpoints runCheckpoints;
+    private final boolean resume;
+
+    public PartitionedExtractionIntegrationConfig(@Qualifier("extractPartitionedJob") Job extractPartitionedJob, JobLauncher jobLauncher, JobExplorer jobExplorer,
+                                                  JobRepository jobRepository, JdbcTemplate jdbcTemplate, @Value("${run.resume}") boolean resume) {
+        this.extractPartitionedJob = extractPartitionedJob;
+        this.jobLauncher = jobLauncher;
+        this.jobExplorer = jobExplorer;
+        this.runCheckpoints = new RunCheckpoints(jdbcTemplate, jobRepository, false);
+        this.resume = resume;
+    }
+
+    @Bean
+    @InboundChannelAdapter(value = "launchPartitionedJobChannel", autoStartup = "${integration.autoStartup}", poller = @Poller(trigger = "fireOnceTrigger"))
+    public MessageSource<JobParameters> partitionedJobParametersSource() {
+        return () -> {
+            JobInstance lastJobInstance = resume ? jobExplorer.getLastJobInstance(extractPartitionedJob.getName()) : null;
+            if (lastJobInstance != null) {
+                JobParameters jobParameters = jobExplorer.getLastJobExecution(lastJobInstance).getJobParameters();
+                log.info("Resuming extractPartitionedJob instance [{}] with parameters [{}]", lastJobInstance.getInstanceId(), jobParameters);
+                runCheckpoints.failStaleExecution(extractPartitionedJob.getName(), jobParameters);
+                return new GenericMessage<>(jobParameters);
+            }
+            return new GenericMessage<>(new JobParametersBuilder()
+                    .addDate(EXECUTION_TIME, new Date())
+                    .toJobParameters());
+        };
+    }
+
+    @ServiceActivator(inputChannel = "launchPartitionedJobChannel", outputChannel = "extractedFilesChannel")
+    public List<File> launchPartitionedExtractJob(JobParameters jobParameters) throws JobExecutionException {
+        JobExecution lastJobExecution = runCheckpoints.lastExecution(extractPartitionedJob.getName(), jobParameters);
+        if (lastJobExecution != null && lastJobExecution.getStatus() == BatchStatus.COMPLETED) {
+            log.info("extractPartitionedJob already completed for parameters [{}], uploading the files left", jobParameters);
+        } else {
+            log.info("Launching extractPartitionedJob with parameters [{}]", jobParameters);
+            JobExecution jobExecution = jobLauncher.run(extractPartitionedJob, jobParameters);
+            log.info("Job execution [{}] ended at [{}] with status [{}] for parameters [{}]",
+                    jobExecution.getId(), jobExecution.getEndTime(), jobExecution.getStatus(), jobExecution.getJobParameters());
+            if (jobExecution.getStatus() != BatchStatus.COMPLETED) {
+                // the owner files are kept for the restart to append to
+                throw new IllegalStateException("extractPartitionedJob ended with status " + jobExecution.getStatus() + ", resume the run to restart it");
+            }
+        }
+        String suffix = "-" + jobParameters.getDate(EXECUTION_TIME).getTime() + ".csv";
+        File[] files = new File(PartitionedExtractionBatchConfig.DIRECTORY).listFiles((dir, name) -> name.endsWith(suffix));
+        return files == null ? List.of() : asList(files);
+    }
+
+    @Filter(inputChannel = "extractedFilesChannel", outputChannel = "extractedFileSplitterChannel", discardChannel = "noExtractedFilesChannel")
+    public boolean emptyExtractedFilesFilter(List<File> files) {
+        return !files.isEmpty();
+    }
+
+    @Splitter(inputChannel = "extractedFileSplitterChannel", outputChannel = "transferToS3Channel")
+    public List<File> extractedFileSplitter(List<File> files) {
+        log.info("Splitting [{}] extracted files", files.size());
+        return files;
+    }
+
+    @ServiceActivator(inputChannel = "noExtractedFilesChannel")
+    public void noExtractedFiles() {
+        log.info("No pets found to extract, shutting down JVM");
+        System.exit(0); // kills the JVM when all integration steps are finished, this allows single run scheduling
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.demo.integration.extract;
+
+import lombok.Value;
+
+/**
+ * An owner with unnamed pets waiting to be extracted, how many there are and the pet id range they fall in, or a run
+ * of small owners from {@code ownerId} to {@code lastOwnerId} that are extracted together. In incremental mode
+ * {@code afterPetId} is the owner's extract watermark, otherwise it is always {@code 0}.
+ */
+@Value
+public class PendingOwner {
+    long ownerId;
+    long lastOwnerId;
+    int owners;
+    long pendingPets;
+    long afterPetId;
+    long maxPetId;
+
+    public boolean isCoalesced() {
+        return owners > 1;
+    }
+
+    /**
+     * @return the fields separated by commas, as queued for a worker
+     */
+    public String encode() {
+        return ownerId + "," + lastOwnerId + "," + owners + "," + pendingPets + "," + afterPetId + "," + maxPetId;
+    }
+
+    public static PendingOwner decode(String encoded) {
+        String[] fields = encoded.split(",");
+        return new PendingOwner(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Integer.parseInt(fields[2]),
+                Long.parseLong(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5]));
+    }
+
+    PendingOwner coalesce(PendingOwner next) {
+        return new PendingOwner(ownerId, next.lastOwnerId, owners + next.owners, pendingPets + next.pendingPets, 0, Math.max(maxPetId, next.maxPetId));
+    }
+}
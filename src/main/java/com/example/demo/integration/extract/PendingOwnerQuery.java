@@ -0,0 +1,93 @@
+package com.example.demo.integration.extract;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds the owners with unnamed pets to extract, grouped and counted by the database and read in keyset pages of
+ * {@code owner_id} so neither {@code Owner} entities nor owners without pending pets are ever loaded. The owners are
+ * returned largest first, so the longest jobs start early instead of holding up the end of the run. Neighbouring owners
+ * with fewer than {@code coalesceRows} pets are merged into runs of up to that many pets, so tiny owners share a job
+ * and an object instead of paying for one each.
+ */
+@Slf4j
+public class PendingOwnerQuery {
+
+    private static final String PENDING_OWNERS = "select owner_id, count(*), 0, max(id) from pet "
+            + "where name is null and owner_id > ? "
+            + "group by owner_id order by owner_id limit ?";
+
+    private static final String PENDING_OWNERS_ABOVE_WATERMARK = "select p.owner_id, count(*), coalesce(w.last_pet_id, 0), max(p.id) from pet p "
+            + "left join extract_watermark w on w.owner_id = p.owner_id "
+            + "where p.name is null and p.owner_id > ? and p.id > coalesce(w.last_pet_id, 0) "
+            + "group by p.owner_id, w.last_pet_id order by p.owner_id limit ?";
+
+    private static final RowMapper<PendingOwner> PENDING_OWNER_MAPPER = (rs, rowNum) -> new PendingOwner(rs.getLong(1), rs.getLong(1), 1, rs.getLong(2), rs.getLong(3), rs.getLong(4));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean incremental;
+    private final int pageSize;
+    private final long coalesceRows;
+
+    public PendingOwnerQuery(JdbcTemplate jdbcTemplate, boolean incremental, int pageSize, long coalesceRows) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.incremental = incremental;
+        this.pageSize = pageSize;
+        this.coalesceRows = coalesceRows;
+    }
+
+    public List<PendingOwner> largestFirst() {
+        String sql = incremental ? PENDING_OWNERS_ABOVE_WATERMARK : PENDING_OWNERS;
+        List<PendingOwner> owners = new ArrayList<>();
+        long lastOwnerId = Long.MIN_VALUE;
+        List<PendingOwner> page;
+        do {
+            page = jdbcTemplate.query(sql, PENDING_OWNER_MAPPER, lastOwnerId, pageSize);
+            owners.addAll(page);
+            if (!page.isEmpty()) {
+                lastOwnerId = page.get(page.size() - 1).getOwnerId();
+            }
+        } while (page.size() == pageSize);
+        if (coalesceRows > 0) {
+            owners = coalesce(owners);
+        }
+        owners.sort(Comparator.comparingLong(PendingOwner::getPendingPets).reversed().thenComparingLong(PendingOwner::getOwnerId));
+        log.info("Found [{}] pending pets of [{}] owners in [{}] jobs", owners.stream().mapToLong(PendingOwner::getPendingPets).sum(),
+                owners.stream().mapToInt(PendingOwner::getOwners).sum(), owners.size());
+        return owners;
+    }
+
+    /**
+     * Merges runs of small owners in {@code owner_id} order. A large owner ends the run, so the owner id range of every
+     * merged run only holds the small owners in it.
+     */
+    private List<PendingOwner> coalesce(List<PendingOwner> owners) {
+        List<PendingOwner> coalesced = new ArrayList<>();
+        PendingOwner run = null;
+        for (PendingOwner owner : owners) {
+            if (owner.getPendingPets() >= coalesceRows) {
+                if (run != null) {
+                    coalesced.add(run);
+                    run = null;
+                }
+                coalesced.add(owner);
+            } else if (run == null) {
+                run = owner;
+            } else if (run.getPendingPets() + owner.getPendingPets() > coalesceRows) {
+                coalesced.add(run);
+                run = owner;
+            } else {
+                run = run.coalesce(owner);
+            }
+        }
+        if (run != null) {
+            coalesced.add(run);
+        }
+        return coalesced;
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.demo.integration.extract;
+
+import lombok.Value;
+
+/**
+ * The columns of an unnamed pet that an extract actually needs, read without loading {@code Pet} or {@code Owner}.
+ */
+@Value
+public class PetKey {
+    long id;
+    long ownerId;
+}
@@ -0,0 +1,51 @@
+package com.example.demo.integration.extract;
+
+import com.example.demo.domain.Pet;
+import org.springframework.batch.item.file.transform.LineAggregator;
+
+/**
+ * Formats a pet as an {@code id,owner_id,name} line without reflection or an intermediate field array. A null name is
+ * written as an empty field, and names holding a comma, quote or line break are quoted as described in RFC 4180.
+ */
+public class PetLineAggregator implements LineAggregator<Pet> {
+
+    @Override
+    public String aggregate(Pet pet) {
+        return format(pet.getId(), pet.getOwner().getId(), pet.getName());
+    }
+
+    public static String format(long id, long ownerId, String name) {
+        StringBuilder line = new StringBuilder(name == null ? 24 : 26 + name.length());
+        line.append(id).append(',').append(ownerId).append(',');
+        if (name != null) {
+            appendName(line, name);
+        }
+        return line.toString();
+    }
+
+    private static void appendName(StringBuilder line, String name) {
+        if (!needsQuotes(name)) {
+            line.append(name);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    private static boolean needsQuotes(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
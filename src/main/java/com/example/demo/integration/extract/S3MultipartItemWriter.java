@@ -0,0 +1,174 @@
+package com.example.demo.integration.extract;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.example.demo.integration.CompressionCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.file.transform.LineAggregator;
+import org.springframework.batch.item.support.AbstractItemStreamItemWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes items as lines straight into an S3 multipart upload, sending a part every time the buffer reaches the
+ * part size. Every chunk is compressed as a frame of its own, so a part always ends on a whole frame. The execution
+ * context only keeps the upload id, the uploaded parts and the number of items in them: the bytes buffered since the
+ * last part are not saved, the reader's item count is set back to the items in parts instead so a restart reads the
+ * buffered items again. The last part is sent once the step has completed, the upload is left open for
+ * {@link CompleteMultipartUploadTasklet} to complete.
+ */
+@Slf4j
+public class S3MultipartItemWriter<T> extends AbstractItemStreamItemWriter<T> implements StepExecutionListener {
+
+    public static final String UPLOAD_ID = "upload.id",
+                               PARTS = "upload.parts",
+                               ITEMS = "upload.items";
+
+    private final AmazonS3 amazonS3;
+    private final String bucket;
+    private final String key;
+    private final int partSize;
+    private final LineAggregator<T> lineAggregator;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    private String header;
+    private CompressionCodec codec = CompressionCodec.NONE;
+    private Map<String, String> userMetadata = Map.of();
+    private String readCountKey;
+    private S3MultipartUpload upload;
+    private int uploadedItems;
+    private int pendingItems;
+
+    public S3MultipartItemWriter(AmazonS3 amazonS3, String bucket, String key, int partSize, LineAggregator<T> lineAggregator) {
+        this.amazonS3 = amazonS3;
+        this.bucket = bucket;
+        this.key = key;
+        this.partSize = partSize;
+        this.lineAggregator = lineAggregator;
+    }
+
+    public void setHeader(String header) {
+        this.header = header;
+    }
+
+    public void setCodec(CompressionCodec codec) {
+        this.codec = codec;
+    }
+
+    public void setUserMetadata(Map<String, String> userMetadata) {
+        this.userMetadata = userMetadata;
+    }
+
+    /**
+     * @param readCountKey the execution context key the step's reader keeps its item count under, the reader has to be
+     *                     updated before this writer, as a step does with the streams it registers
+     */
+    public void setReadCountKey(String readCountKey) {
+        this.readCountKey = readCountKey;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+        super.open(executionContext);
+        buffer.reset();
+        pendingItems = 0;
+        if (executionContext.containsKey(getExecutionContextKey(UPLOAD_ID))) {
+            upload = S3MultipartUpload.resume(amazonS3, bucket, key,
+                    executionContext.getString(getExecutionContextKey(UPLOAD_ID)),
+                    executionContext.getString(getExecutionContextKey(PARTS)));
+            uploadedItems = executionContext.getInt(getExecutionContextKey(ITEMS), 0);
+        } else {
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setUserMetadata(userMetadata);
+            upload = S3MultipartUpload.initiate(amazonS3, bucket, key, metadata);
+            uploadedItems = 0;
+        }
+        // the header goes into the first part, it is written again until that part is sent
+        if (header != null && upload.getParts().isEmpty()) {
+            try {
+                writeFrame(List.of(header));
+            } catch (IOException e) {
+                throw new ItemStreamException("Unable to write header for " + bucket + "/" + key, e);
+            }
+        }
+    }
+
+    @Override
+    public void write(List<? extends T> items) throws IOException {
+        List<String> lines = new ArrayList<>(items.size());
+        for (T item : items) {
+            lines.add(lineAggregator.aggregate(item));
+        }
+        writeFrame(lines);
+        pendingItems += items.size();
+        if (buffer.size() >= partSize) {
+            uploadPart();
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+        super.update(executionContext);
+        executionContext.putString(getExecutionContextKey(UPLOAD_ID), upload.getUploadId());
+        executionContext.putString(getExecutionContextKey(PARTS), upload.getParts());
+        executionContext.putInt(getExecutionContextKey(ITEMS), uploadedItems);
+        if (readCountKey != null) {
+            executionContext.putInt(readCountKey, uploadedItems);
+        }
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        if (stepExecution.getStatus() != BatchStatus.COMPLETED || buffer.size() == 0) {
+            return null;
+        }
+        try {
+            uploadPart();
+        } catch (RuntimeException e) {
+            // an after-step exception would only be logged, the step has to fail for the upload not to be completed
+            log.error("Unable to upload last part for [{}/{}]", bucket, key, e);
+            stepExecution.setStatus(BatchStatus.FAILED);
+            stepExecution.addFailureException(e);
+            return ExitStatus.FAILED;
+        }
+        update(stepExecution.getExecutionContext());
+        return null;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        buffer.reset();
+        upload = null;
+    }
+
+    private void uploadPart() {
+        upload.uploadPart(buffer.toByteArray(), buffer.size());
+        buffer.reset();
+        uploadedItems += pendingItems;
+        pendingItems = 0;
+    }
+
+    private void writeFrame(List<String> lines) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(codec.compress(buffer), StandardCharsets.UTF_8))) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+    }
+}
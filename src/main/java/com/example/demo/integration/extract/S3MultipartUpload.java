@@ -0,0 +1,89 @@
+package com.example.demo.integration.extract;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Thin wrapper around an S3 multipart upload that can be written to a step
+ * {@link org.springframework.batch.item.ExecutionContext} and picked up again on restart.
+ */
+@Slf4j
+public class S3MultipartUpload {
+
+    private final AmazonS3 amazonS3;
+    private final String bucket;
+    private final String key;
+    private final String uploadId;
+    private final List<PartETag> partETags;
+
+    private S3MultipartUpload(AmazonS3 amazonS3, String bucket, String key, String uploadId, List<PartETag> partETags) {
+        this.amazonS3 = amazonS3;
+        this.bucket = bucket;
+        this.key = key;
+        this.uploadId = uploadId;
+        this.partETags = partETags;
+    }
+
+    public static S3MultipartUpload initiate(AmazonS3 amazonS3, String bucket, String key, ObjectMetadata metadata) {
+        InitiateMultipartUploadResult result = amazonS3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key, metadata));
+        log.info("Initiated multipart upload [{}] for [{}/{}]", result.getUploadId(), bucket, key);
+        return new S3MultipartUpload(amazonS3, bucket, key, result.getUploadId(), new ArrayList<>());
+    }
+
+    /**
+     * @param parts completed parts as returned by {@link #getParts()}
+     */
+    public static S3MultipartUpload resume(AmazonS3 amazonS3, String bucket, String key, String uploadId, String parts) {
+        List<PartETag> partETags = new ArrayList<>();
+        if (parts != null && !parts.isEmpty()) {
+            for (String part : parts.split(",")) {
+                int separator = part.indexOf(':');
+                partETags.add(new PartETag(Integer.parseInt(part.substring(0, separator)), part.substring(separator + 1)));
+            }
+        }
+        log.info("Resuming multipart upload [{}] for [{}/{}] after [{}] parts", uploadId, bucket, key, partETags.size());
+        return new S3MultipartUpload(amazonS3, bucket, key, uploadId, partETags);
+    }
+
+    public void uploadPart(byte[] bytes, int length) {
+        int partNumber = partETags.size() + 1;
+        UploadPartRequest request = new UploadPartRequest()
+                .withBucketName(bucket)
+                .withKey(key)
+                .withUploadId(uploadId)
+                .withPartNumber(partNumber)
+                .withInputStream(new ByteArrayInputStream(bytes, 0, length))
+                .withPartSize(length);
+        partETags.add(amazonS3.uploadPart(request).getPartETag());
+        log.debug("Uploaded part [{}] of [{}] bytes for [{}/{}]", partNumber, length, bucket, key);
+    }
+
+    public void complete() {
+        amazonS3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags));
+        log.info("Completed multipart upload [{}] for [{}/{}] with [{}] parts", uploadId, bucket, key, partETags.size());
+    }
+
+    public void abort() {
+        amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+        log.info("Aborted multipart upload [{}] for [{}/{}]", uploadId, bucket, key);
+    }
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    /**
+     * @return completed parts encoded as {@code number:etag} pairs separated by commas
+     */
+    public String getParts() {
+        return partETags.stream()
+                .map(partETag -> partETag.getPartNumber() + ":" + partETag.getETag())
+                .collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.demo.integration.ingest;
+
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Filters out names of pets that do not exist, so the step counts them as filtered, with one query per chunk instead of
+ * a lookup per line. A chunk is read in full before its first item is processed, so the ids collected while reading are
+ * looked up together then.
+ */
+public class ExistingPetItemProcessor implements ItemProcessor<PetDto, PetDto>, ItemReadListener<PetDto> {
+
+    private static final String EXISTING_PETS = "select id from pet where id in (:ids)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Set<Long> read = new HashSet<>();
+    private final Set<Long> existing = new HashSet<>();
+
+    public ExistingPetItemProcessor(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void beforeRead() {
+    }
+
+    @Override
+    public void afterRead(PetDto item) {
+        read.add(item.getId());
+    }
+
+    @Override
+    public void onReadError(Exception ex) {
+    }
+
+    @Override
+    public PetDto process(PetDto item) {
+        if (!read.isEmpty()) {
+            existing.clear();
+            existing.addAll(jdbcTemplate.queryForList(EXISTING_PETS, Map.of("ids", read), Long.class));
+            read.clear();
+        }
+        return existing.contains(item.getId()) ? item : null;
+    }
+}
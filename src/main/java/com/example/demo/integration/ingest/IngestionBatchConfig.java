@@ -1,7 +1,16 @@
 package com.example.demo.integration.ingest;
 
+import com.amazonaws.services.s3.AmazonS3;
 import com.example.demo.domain.Pet;
+import com.example.demo.integration.AdaptiveChunkSizePolicy;
+import com.example.demo.integration.CompressionCodec;
+import com.example.demo.integration.ExchangeFormat;
+import com.example.demo.integration.QuotedRecordSeparatorPolicy;
+import com.example.demo.integration.parquet.LocalInputFile;
+import com.example.demo.integration.parquet.S3InputFile;
+import com.example.demo.metrics.ChunkMetricsListener;
 import com.example.demo.repository.PetRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
@@ -9,33 +18,57 @@ import org.springframework.batch.core.configuration.annotation.JobBuilderFactory
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStreamReader;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.JpaItemWriter;
 import org.springframework.batch.item.file.FlatFileItemReader;
-import org.springframework.batch.item.file.mapping.BeanWrapperFieldSetMapper;
-import org.springframework.batch.item.file.mapping.DefaultLineMapper;
-import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.batch.item.file.LineMapper;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 import javax.persistence.EntityManagerFactory;
+import java.nio.file.Path;
 
 @Configuration
 @Slf4j
+@Profile({"ingestion", "jobs"})
 public class IngestionBatchConfig {
 
     private final EntityManagerFactory entityManagerFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final JobBuilderFactory jobBuilderFactory;
+    private final JdbcTemplate jdbcTemplate;
+    private final AmazonS3 amazonS3;
+    private final boolean bulkUpdate;
+    private final boolean streaming;
+    private final int readBufferSize;
+    private final int chunkSize;
+    private final int maxChunkSize;
+    private final long targetChunkMillis;
 
-    public IngestionBatchConfig(EntityManagerFactory entityManagerFactory, StepBuilderFactory stepBuilderFactory, JobBuilderFactory jobBuilderFactory) {
+    public IngestionBatchConfig(EntityManagerFactory entityManagerFactory, StepBuilderFactory stepBuilderFactory, JobBuilderFactory jobBuilderFactory,
+                                JdbcTemplate jdbcTemplate, AmazonS3 amazonS3, @Value("${ingest.bulkUpdate}") boolean bulkUpdate,
+                                @Value("${ingest.mode}") String mode, @Value("${ingest.readBufferSize}") int readBufferSize,
+                                @Value("${ingest.chunkSize}") int chunkSize, @Value("${ingest.maxChunkSize}") int maxChunkSize,
+                                @Value("${ingest.targetChunkMillis}") long targetChunkMillis) {
         this.entityManagerFactory = entityManagerFactory;
         this.stepBuilderFactory = stepBuilderFactory;
         this.jobBuilderFactory = jobBuilderFactory;
+        this.jdbcTemplate = jdbcTemplate;
+        this.amazonS3 = amazonS3;
+        this.bulkUpdate = bulkUpdate;
+        this.streaming = "streaming".equals(mode);
+        this.readBufferSize = readBufferSize;
+        this.chunkSize = chunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.targetChunkMillis = targetChunkMillis;
     }
 
     @Bean
@@ -44,26 +77,44 @@ public class IngestionBatchConfig {
     }
 
     @Bean
-    @StepScope
-    public FlatFileItemReader<PetDto> petNameFileReader(@Value("#{jobParameters['file']}") String file) {
-        DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer();
-        tokenizer.setNames(new String[] { "id", "ownerId", "name" });
-
-        BeanWrapperFieldSetMapper fieldSetMapper = new BeanWrapperFieldSetMapper<>();
-        fieldSetMapper.setTargetType(PetDto.class);
-
-        DefaultLineMapper lineMapper = new DefaultLineMapper();
-        lineMapper.setLineTokenizer(tokenizer);
-        lineMapper.setFieldSetMapper(fieldSetMapper);
+    public LineMapper<PetDto> petLineMapper() {
+        return new PetDtoLineMapper();
+    }
 
+    @Bean
+    @StepScope
+    public ItemStreamReader<PetDto> petNameFileReader(@Value("#{jobParameters['file']}") String file, @Value("#{jobParameters['format']}") ExchangeFormat format,
+                                                      @Qualifier("petLineMapper") LineMapper<PetDto> lineMapper) {
+        if (format == ExchangeFormat.PARQUET) {
+            ParquetPetItemReader petNameFileReader = new ParquetPetItemReader(new LocalInputFile(Path.of(file)));
+            petNameFileReader.setName("petNameFileReader");
+            return petNameFileReader;
+        }
         FlatFileItemReader<PetDto> petNameFileReader = new FlatFileItemReader<>();
-        petNameFileReader.setResource(new FileSystemResource(file));
+        petNameFileReader.setResource(CompressionCodec.decompressingResource(file));
         petNameFileReader.setLinesToSkip(1);
         petNameFileReader.setLineMapper(lineMapper);
+        petNameFileReader.setRecordSeparatorPolicy(new QuotedRecordSeparatorPolicy());
 
         return petNameFileReader;
     }
 
+    @Bean
+    @StepScope
+    public ItemStreamReader<PetDto> petNameS3Reader(@Value("#{jobParameters['bucket']}") String bucket, @Value("#{jobParameters['key']}") String key,
+                                                    @Value("#{jobParameters['format']}") ExchangeFormat format, @Qualifier("petLineMapper") LineMapper<PetDto> lineMapper) {
+        if (format == ExchangeFormat.PARQUET) {
+            ParquetPetItemReader petNameS3Reader = new ParquetPetItemReader(new S3InputFile(amazonS3, bucket, key));
+            petNameS3Reader.setName("petNameS3Reader");
+            return petNameS3Reader;
+        }
+        S3ObjectItemReader<PetDto> petNameS3Reader = new S3ObjectItemReader<>(amazonS3, bucket, key, lineMapper, readBufferSize);
+        petNameS3Reader.setName("petNameS3Reader");
+        petNameS3Reader.setLinesToSkip(1);
+        petNameS3Reader.setRecordSeparatorPolicy(new QuotedRecordSeparatorPolicy());
+        return petNameS3Reader;
+    }
+
     @Bean
     @StepScope
     public JpaItemWriter<Pet> petUpdateWriter() {
@@ -73,12 +124,46 @@ public class IngestionBatchConfig {
     }
 
     @Bean
-    public Step ingestStep(@Qualifier("petNameFileReader") ItemReader petNameFileReader, PetItemProcessor processor, @Qualifier("petUpdateWriter") ItemWriter petUpdateWriter) {
+    @StepScope
+    public PetNameItemWriter petNameWriter() {
+        return new PetNameItemWriter(jdbcTemplate);
+    }
+
+    @Bean
+    @StepScope
+    public ExistingPetItemProcessor existingPetProcessor() {
+        return new ExistingPetItemProcessor(new NamedParameterJdbcTemplate(jdbcTemplate));
+    }
+
+    @Bean
+    @StepScope
+    public AdaptiveChunkSizePolicy ingestChunkPolicy(MeterRegistry meterRegistry) {
+        return new AdaptiveChunkSizePolicy(chunkSize, maxChunkSize, targetChunkMillis, meterRegistry);
+    }
+
+    @Bean
+    public Step ingestStep(@Qualifier("petNameFileReader") ItemReader petNameFileReader, @Qualifier("petNameS3Reader") ItemReader petNameS3Reader,
+                           PetItemProcessor processor, @Qualifier("existingPetProcessor") ItemProcessor existingPetProcessor,
+                           @Qualifier("petUpdateWriter") ItemWriter petUpdateWriter, @Qualifier("petNameWriter") ItemWriter petNameWriter,
+                           @Qualifier("ingestChunkPolicy") AdaptiveChunkSizePolicy ingestChunkPolicy, ChunkMetricsListener chunkMetricsListener) {
+        ItemReader<PetDto> petNameReader = streaming ? petNameS3Reader : petNameFileReader;
+        if (bulkUpdate) {
+            return stepBuilderFactory.get("ingest")
+                    .<PetDto, PetDto> chunk(ingestChunkPolicy)
+                    .reader(petNameReader)
+                    .processor(existingPetProcessor)
+                    .writer(petNameWriter)
+                    .listener(ingestChunkPolicy)
+                    .listener(chunkMetricsListener)
+                    .build();
+        }
         return stepBuilderFactory.get("ingest")
-                .<PetDto, Pet> chunk(5)
-                .reader(petNameFileReader)
+                .<PetDto, Pet> chunk(ingestChunkPolicy)
+                .reader(petNameReader)
                 .processor(processor)
                 .writer(petUpdateWriter)
+                .listener(ingestChunkPolicy)
+                .listener(chunkMetricsListener)
                 .build();
     }
 
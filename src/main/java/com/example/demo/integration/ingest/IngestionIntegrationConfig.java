@@ -1,46 +1,138 @@
 package com.example.demo.integration.ingest;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.example.demo.integration.ExchangeFormat;
 import com.example.demo.integration.FireOnceTrigger;
+import com.example.demo.integration.RunCheckpoints;
+import com.example.demo.integration.RunUnit;
+import com.example.demo.integration.S3RangedDownloader;
+import com.example.demo.integration.UnitStage;
+import com.example.demo.integration.VirtualThreadTaskExecutor;
+import com.example.demo.integration.WorkUnit;
+import com.example.demo.integration.WorkUnits;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.*;
 import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.integration.annotation.*;
 import org.springframework.integration.aws.inbound.S3InboundFileSynchronizer;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.ExecutorChannel;
 import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.core.MessageSource;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.MessagingException;
 import org.springframework.messaging.PollableChannel;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Arrays.asList;
 
 @Configuration
+@Lazy(false)
 @Slf4j
 @Profile("ingestion")
 public class IngestionIntegrationConfig {
 
     private static final String FILE = "file",
-            EXECUTION_TIME = "execution_time";
+            BUCKET = "bucket",
+            KEY = "key",
+            FORMAT = "format",
+            EXECUTION_TIME = "execution_time",
+            S3_KEY = "s3_key",
+            JOB_STATUS = "jobStatus",
+            WORK_UNIT_ID = "workUnitId",
+            EVENT_KEY = "eventKey";
 
     private final AmazonS3 amazonS3;
     private final JobLauncher jobLauncher;
     private final Job job;
     private final String outputBucketName;
+    private final int concurrency;
+    private final int downloadConcurrency;
+    private final int queueCapacity;
+    private final boolean streaming;
+    private final boolean pipelined;
+    private final boolean virtualThreads;
+    private final Timer launchQueueTimer;
+    private final RunCheckpoints runCheckpoints;
+    private final AtomicInteger failedUnits = new AtomicInteger();
+    private final WorkUnits workUnits;
+    private final String role;
+    private final String runId = UUID.randomUUID().toString();
+    private final long pollInterval;
+    private final S3DownloadCache downloadCache;
+    private final S3RangedDownloader downloader;
+    private final S3EventQueue eventQueue;
 
-    public IngestionIntegrationConfig(AmazonS3 amazonS3, JobLauncher jobLauncher, @Qualifier("ingestJob") Job job, @Value("${aws.s3.outputBucketName}")String outputBucketName) {
+    public IngestionIntegrationConfig(AmazonS3 amazonS3, JobLauncher jobLauncher, @Qualifier("ingestJob") Job job, @Value("${aws.s3.outputBucketName}")String outputBucketName,
+                                      @Value("${ingest.concurrency}") int concurrency, @Value("${ingest.downloadConcurrency}") int downloadConcurrency,
+                                      @Value("${ingest.queueCapacity}") int queueCapacity, @Value("${ingest.mode}") String mode,
+                                      @Value("${integration.virtualThreads}") boolean virtualThreads, MeterRegistry meterRegistry,
+                                      JdbcTemplate jdbcTemplate, JobRepository jobRepository, @Value("${run.checkpoints}") boolean checkpoints,
+                                      @Value("${run.resume}") boolean resume, WorkUnits workUnits, @Value("${run.role}") String role,
+                                      @Value("${work.pollInterval}") long pollInterval, @Value("${ingest.cacheBytes}") long cacheBytes,
+                                      @Value("${ingest.prefetch}") int prefetch, S3RangedDownloader downloader, @Value("${ingest.source}") String source,
+                                      ObjectProvider<S3EventQueue> eventQueue) {
+        this.streaming = "streaming".equals(mode);
+        this.pipelined = "pipelined".equals(mode);
         this.amazonS3 = amazonS3;
         this.jobLauncher = jobLauncher;
         this.job = job;
         this.outputBucketName = outputBucketName;
+        this.concurrency = concurrency;
+        this.downloadConcurrency = downloadConcurrency;
+        this.queueCapacity = queueCapacity;
+        this.virtualThreads = virtualThreads;
+        this.launchQueueTimer = Timer.builder("batch.job.launch.queue")
+                .description("Time from job parameters being built to the job being launched")
+                .tag("job", job.getName())
+                .register(meterRegistry);
+        // a resumed run records its units too, or the ones it finishes would be resumed again
+        this.runCheckpoints = new RunCheckpoints(jdbcTemplate, jobRepository, checkpoints || resume);
+        this.workUnits = workUnits;
+        this.role = role;
+        this.pollInterval = pollInterval;
+        this.downloader = downloader;
+        this.downloadCache = cacheBytes > 0 ? new S3DownloadCache(downloader, new File("output"), cacheBytes, prefetch) : null;
+        this.eventQueue = eventQueue.getIfAvailable();
+        if (!"standalone".equals(role) && ("sync".equals(mode) || resume)) {
+            throw new IllegalStateException("run.role " + role + " shares objects between JVMs, it needs ingest.mode pipelined or streaming and run.resume=false");
+        }
+        if ("events".equals(source) && ("sync".equals(mode) || resume || !"standalone".equals(role))) {
+            throw new IllegalStateException("ingest.source events runs until stopped, it needs ingest.mode pipelined or streaming, run.resume=false and run.role standalone");
+        }
     }
 
     public void exit(String message) {
@@ -53,7 +145,9 @@ public class IngestionIntegrationConfig {
         } else {
             log.info(message);
         }
-        System.exit(0); // kills the JVM when all integration steps are finished, this allows single run scheduling
+        // kills the JVM when all integration steps are finished, this allows single run scheduling,
+        // a non-zero status tells the scheduler the run has unfinished units to resume
+        System.exit(null != ex || failedUnits.get() > 0 ? 1 : 0);
     }
 
     @Bean
@@ -66,6 +160,45 @@ public class IngestionIntegrationConfig {
         return new QueueChannel();
     }
 
+    @Bean
+    public TaskExecutor ingestTaskExecutor() {
+        return boundedExecutor("ingest-", concurrency);
+    }
+
+    @Bean
+    public TaskExecutor downloadTaskExecutor() {
+        return boundedExecutor("download-", downloadConcurrency);
+    }
+
+    private TaskExecutor boundedExecutor(String threadNamePrefix, int poolSize) {
+        if (virtualThreads) {
+            return new VirtualThreadTaskExecutor(threadNamePrefix, poolSize);
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        // a full queue runs the work on the sending thread, which holds back whatever feeds it
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix(threadNamePrefix);
+        return executor;
+    }
+
+    @Bean(name = "launchJobChannel")
+    public MessageChannel launchJobChannel(@Qualifier("ingestTaskExecutor") TaskExecutor ingestTaskExecutor) {
+        // in pipelined mode a download thread hands its file over and starts the next download, even with one job at a time
+        if (concurrency > 1 || pipelined) {
+            log.info("Ingesting up to [{}] files concurrently", concurrency);
+            return new ExecutorChannel(ingestTaskExecutor);
+        }
+        return new DirectChannel();
+    }
+
+    @Bean(name = "downloadChannel")
+    public MessageChannel downloadChannel(@Qualifier("downloadTaskExecutor") TaskExecutor downloadTaskExecutor) {
+        return new ExecutorChannel(downloadTaskExecutor);
+    }
+
     @Bean
     public S3InboundFileSynchronizer inboundFileSynchronizer() {
         S3InboundFileSynchronizer synchronizer = new S3InboundFileSynchronizer(amazonS3);
@@ -76,7 +209,8 @@ public class IngestionIntegrationConfig {
     }
 
     @Bean
-    @InboundChannelAdapter(value="s3InputChannel", poller = @Poller(trigger = "fireOnceTrigger"))
+    @ConditionalOnExpression("'${ingest.mode}' == 'sync' and !${run.resume}")
+    @InboundChannelAdapter(value="s3InputChannel", autoStartup = "${integration.autoStartup}", poller = @Poller(trigger = "fireOnceTrigger"))
     public MessageSource<List<File>> s3MessageSource(S3InboundFileSynchronizer synchronizer) {
         return () -> {
             log.info("Syncing S3 objects in [{}] bucket", outputBucketName);
@@ -86,6 +220,128 @@ public class IngestionIntegrationConfig {
         };
     }
 
+    @Bean
+    @ConditionalOnExpression("('${ingest.mode}' == 'pipelined' or '${ingest.mode}' == 'streaming') and !${run.resume} and '${run.role}' != 'worker' and '${ingest.source}' == 'list'")
+    @InboundChannelAdapter(value = "s3ObjectsChannel", autoStartup = "${integration.autoStartup}", poller = @Poller(trigger = "fireOnceTrigger"))
+    public MessageSource<List<S3ObjectSummary>> s3ObjectsMessageSource() {
+        return () -> {
+            log.info("Listing S3 objects in [{}] bucket", outputBucketName);
+            List<S3ObjectSummary> objects = new ArrayList<>();
+            ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(outputBucketName);
+            ListObjectsV2Result result;
+            do {
+                result = amazonS3.listObjectsV2(request);
+                objects.addAll(result.getObjectSummaries());
+                request.setContinuationToken(result.getNextContinuationToken());
+            } while (result.isTruncated());
+            return new GenericMessage<>(objects);
+        };
+    }
+
+    @Filter(inputChannel = "s3ObjectsChannel", outputChannel = "s3ObjectSplitterChannel", discardChannel = "noFilesChannel")
+    public boolean emptyObjectsFilter(List<S3ObjectSummary> objects) {
+        return !objects.isEmpty();
+    }
+
+    @Splitter(inputChannel = "s3ObjectSplitterChannel", outputChannel = "s3ObjectDispatchChannel")
+    public List<S3ObjectSummary> s3ObjectSplitter(List<S3ObjectSummary> objects) {
+        log.info("Splitting [{}] S3 objects", objects.size());
+        if (downloadCache != null) {
+            // the largest downloads start first, while the budget is still free
+            objects.sort(Comparator.comparingLong(S3ObjectSummary::getSize).reversed());
+        }
+        return objects;
+    }
+
+    @Router(inputChannel = "s3ObjectDispatchChannel")
+    public String s3ObjectDispatchRouter(S3ObjectSummary object) {
+        return "manager".equals(role) ? "enqueueObjectChannel" : "s3ObjectChannel";
+    }
+
+    @ServiceActivator(inputChannel = "enqueueObjectChannel", outputChannel = "endChannel")
+    public S3ObjectSummary enqueueObject(S3ObjectSummary object) {
+        // the size goes first as keys may hold commas
+        workUnits.enqueue(runId, job.getName(), object.getSize() + "," + object.getKey(), object.getSize());
+        return object;
+    }
+
+    @Bean
+    @ConditionalOnExpression("'${run.role}' == 'worker'")
+    @InboundChannelAdapter(value = "s3ObjectChannel", autoStartup = "${integration.autoStartup}", poller = @Poller(fixedDelay = "${work.pollInterval}", maxMessagesPerPoll = "-1"))
+    public MessageSource<S3ObjectSummary> workUnitMessageSource() {
+        return () -> {
+            // one unit per ingest worker, and in pipelined mode one per download thread fetching the next files
+            WorkUnit unit = workUnits.claim(job.getName(), streaming ? concurrency : concurrency + downloadConcurrency);
+            if (unit == null) {
+                if (workUnits.isDrained(job.getName())) {
+                    exit(String.format("No S3 objects left for worker, [%s] did not complete, shutting down JVM", failedUnits.get()));
+                }
+                return null;
+            }
+            String payload = unit.getPayload();
+            int separator = payload.indexOf(',');
+            S3ObjectSummary object = new S3ObjectSummary();
+            object.setBucketName(outputBucketName);
+            object.setSize(Long.parseLong(payload.substring(0, separator)));
+            object.setKey(payload.substring(separator + 1));
+            return MessageBuilder.withPayload(object)
+                    .setHeader(WORK_UNIT_ID, unit.getId())
+                    .build();
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "ingest.source", havingValue = "events")
+    // the queue long polls for events, so the next poll can start straight away
+    @InboundChannelAdapter(value = "s3ObjectChannel", autoStartup = "${integration.autoStartup}", poller = @Poller(fixedDelay = "0", maxMessagesPerPoll = "-1"))
+    public MessageSource<S3ObjectSummary> s3EventMessageSource() {
+        return () -> {
+            S3ObjectSummary object = eventQueue.next();
+            if (object == null) {
+                return null;
+            }
+            log.info("Received S3 object [{}/{}] of [{}] bytes", object.getBucketName(), object.getKey(), object.getSize());
+            // a failure downstream, on any thread, fails the object rather than the JVM
+            return MessageBuilder.withPayload(object)
+                    .setHeader(EVENT_KEY, object.getKey())
+                    .setErrorChannelName("eventErrorChannel")
+                    .build();
+        };
+    }
+
+    @Router(inputChannel = "s3ObjectChannel")
+    public String s3ObjectRouter(S3ObjectSummary object) {
+        // streamed objects are read by the job itself, nothing needs downloading
+        return streaming ? "streamObjectChannel" : "downloadChannel";
+    }
+
+    @Transformer(inputChannel = "streamObjectChannel", outputChannel = "launchJobChannel")
+    public JobParameters s3ObjectToJobParametersTransformer(S3ObjectSummary object) {
+        log.info("Building job parameters for S3 object [{}/{}]", object.getBucketName(), object.getKey());
+        return new JobParametersBuilder()
+                .addString(BUCKET, object.getBucketName())
+                .addString(KEY, object.getKey())
+                .addString(FORMAT, ExchangeFormat.forName(object.getKey()).parameter())
+                .addDate(EXECUTION_TIME, new Date())
+                .toJobParameters();
+    }
+
+    @ServiceActivator(inputChannel = "downloadChannel", outputChannel = "fileChannel")
+    public Message<File> downloadS3Object(S3ObjectSummary object) throws InterruptedException, IOException {
+        File file;
+        if (downloadCache != null) {
+            file = downloadCache.fetch(object);
+        } else {
+            file = S3RangedDownloader.localFile(new File("output"), object.getKey());
+            file.getParentFile().mkdirs();
+            log.info("Downloading [{}] bytes from [{}/{}]", object.getSize(), object.getBucketName(), object.getKey());
+            downloader.download(object.getBucketName(), object.getKey(), object.getSize(), object.getETag(), file);
+        }
+        return MessageBuilder.withPayload(file)
+                .setHeader(S3_KEY, object.getKey())
+                .build();
+    }
+
     @Filter(inputChannel = "s3InputChannel", outputChannel = "fileSplitterChannel", discardChannel = "noFilesChannel")
     public boolean emptyFilesFilter(List<File> files) {
         return !files.isEmpty();
@@ -98,27 +354,122 @@ public class IngestionIntegrationConfig {
     }
 
     @Transformer(inputChannel = "fileChannel", outputChannel = "launchJobChannel")
-    public JobParameters fileToJobParametersTransformer(File file) {
+    public JobParameters fileToJobParametersTransformer(File file, @Header(value = S3_KEY, required = false) String key) {
         log.info("Building job parameters for file [{}]", file);
-        return new JobParametersBuilder()
+        JobParametersBuilder jobParameters = new JobParametersBuilder()
                 .addString(FILE, file.getAbsolutePath())
-                .addDate(EXECUTION_TIME, new Date())
-                .toJobParameters();
+                .addString(FORMAT, ExchangeFormat.forName(file.getName()).parameter())
+                .addDate(EXECUTION_TIME, new Date());
+        if (key != null) {
+            // kept with the job so the object can still be deleted when a resumed run finishes it
+            jobParameters.addString(S3_KEY, key, false);
+        }
+        return jobParameters.toJobParameters();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "run.resume", havingValue = "true")
+    @InboundChannelAdapter(value = "resumeUnitsChannel", autoStartup = "${integration.autoStartup}", poller = @Poller(trigger = "fireOnceTrigger"))
+    public MessageSource<List<RunUnit>> resumeUnitMessageSource() {
+        return () -> new GenericMessage<>(runCheckpoints.unfinished(job.getName()));
+    }
+
+    @Filter(inputChannel = "resumeUnitsChannel", outputChannel = "resumeUnitSplitterChannel", discardChannel = "noFilesChannel")
+    public boolean emptyResumeUnitsFilter(List<RunUnit> units) {
+        return !units.isEmpty();
+    }
+
+    @Splitter(inputChannel = "resumeUnitSplitterChannel", outputChannel = "resumeUnitChannel")
+    public List<RunUnit> resumeUnitSplitter(List<RunUnit> units) {
+        log.info("Splitting [{}] unfinished units", units.size());
+        return units;
+    }
+
+    @Router(inputChannel = "resumeUnitChannel")
+    public String resumeUnitRouter(RunUnit unit) {
+        // every unit carries on from the stage after the last one it finished
+        switch (unit.getStage()) {
+            case LAUNCHED:
+                return "resumeLaunchChannel";
+            case JOB_COMPLETED:
+                return "resumeIngestedChannel";
+            default:
+                return "resumeRemoteDeletedChannel";
+        }
+    }
+
+    @Transformer(inputChannel = "resumeLaunchChannel", outputChannel = "launchJobChannel")
+    public JobParameters resumeLaunch(RunUnit unit) {
+        runCheckpoints.failStaleExecution(unit.getJobName(), unit.getJobParameters());
+        return unit.getJobParameters();
+    }
+
+    @Transformer(inputChannel = "resumeIngestedChannel", outputChannel = "ingestedChannel")
+    public JobExecution resumeIngested(RunUnit unit) {
+        log.info("Resuming clean up of S3 object for parameters [{}]", unit.getJobParameters());
+        return runCheckpoints.lastExecution(unit.getJobName(), unit.getJobParameters());
     }
 
-    @ServiceActivator(inputChannel = "launchJobChannel", outputChannel = "deleteLocalFileChannel")
-    public File launchExtractJob(JobParameters jobParameters) throws JobExecutionException {
+    @Transformer(inputChannel = "resumeRemoteDeletedChannel", outputChannel = "deleteLocalFileChannel")
+    public JobExecution resumeRemoteDeleted(RunUnit unit) {
+        log.info("Resuming clean up of local file for parameters [{}]", unit.getJobParameters());
+        return runCheckpoints.lastExecution(unit.getJobName(), unit.getJobParameters());
+    }
+
+    @ServiceActivator(inputChannel = "launchJobChannel", outputChannel = "ingestedChannel")
+    public Message<JobExecution> launchExtractJob(JobParameters jobParameters, @Header(MessageHeaders.TIMESTAMP) long timestamp) throws JobExecutionException {
+        launchQueueTimer.record(Duration.ofMillis(System.currentTimeMillis() - timestamp));
         log.info("Launching ingestJob with parameters [{}]", jobParameters);
+        runCheckpoints.record(job.getName(), jobParameters, UnitStage.LAUNCHED);
         JobExecution jobExecution = jobLauncher.run(job, jobParameters);
         log.info("Job execution [{}] ended at [{}] with status [{}] for parameters [{}]",
                 jobExecution.getId(), jobExecution.getEndTime(), jobExecution.getStatus(), jobExecution.getJobParameters());
-        return new File(jobParameters.getString(FILE));
+        if (jobExecution.getStatus() == BatchStatus.COMPLETED) {
+            runCheckpoints.record(job.getName(), jobParameters, UnitStage.JOB_COMPLETED);
+        } else {
+            failedUnits.incrementAndGet();
+        }
+        return MessageBuilder.withPayload(jobExecution)
+                .setHeader(JOB_STATUS, jobExecution.getStatus())
+                .build();
     }
 
-    @ServiceActivator(inputChannel = "deleteLocalFileChannel", outputChannel = "endChannel")
-    public Boolean deleteLocalFile(File file) {
-        log.info("Deleting file [{}]", file.getName());
-        return file.delete();
+    @ServiceActivator(inputChannel = "ingestedChannel", outputChannel = "deleteLocalFileChannel")
+    public JobExecution deleteRemoteObject(JobExecution jobExecution) {
+        JobParameters jobParameters = jobExecution.getJobParameters();
+        String key = jobParameters.getString(KEY) != null ? jobParameters.getString(KEY) : jobParameters.getString(S3_KEY);
+        // the synchronizer removes objects as it copies them, listed objects are only removed once ingested
+        if (key == null) {
+            return jobExecution;
+        }
+        if (jobExecution.getStatus() == BatchStatus.COMPLETED) {
+            log.info("Deleting S3 object [{}/{}]", outputBucketName, key);
+            amazonS3.deleteObject(outputBucketName, key);
+            runCheckpoints.record(job.getName(), jobParameters, UnitStage.REMOTE_DELETED);
+        } else {
+            log.warn("Keeping S3 object [{}/{}] as job execution [{}] ended with status [{}]", outputBucketName, key, jobExecution.getId(), jobExecution.getStatus());
+        }
+        return jobExecution;
+    }
+
+    @ServiceActivator(inputChannel = "deleteLocalFileChannel", outputChannel = "unitDoneChannel")
+    public Boolean deleteLocalFile(JobExecution jobExecution) {
+        String file = jobExecution.getJobParameters().getString(FILE);
+        boolean completed = jobExecution.getStatus() == BatchStatus.COMPLETED;
+        if (downloadCache != null && file != null) {
+            downloadCache.release(new File(file), completed);
+        }
+        if (!completed) {
+            // the file is kept for the job's restart to carry on reading
+            return false;
+        }
+        boolean deleted = false;
+        if (downloadCache == null && file != null) {
+            log.info("Deleting file [{}]", file);
+            deleted = new File(file).delete();
+        }
+        runCheckpoints.record(job.getName(), jobExecution.getJobParameters(), UnitStage.DONE);
+        return deleted;
     }
 
     @ServiceActivator(inputChannel = "noFilesChannel")
@@ -126,9 +477,40 @@ public class IngestionIntegrationConfig {
         exit("No files found to process, shutting down JVM");
     }
 
+    @Router(inputChannel = "unitDoneChannel")
+    public String unitDoneRouter(Object result, @Header(name = WORK_UNIT_ID, required = false) Long workUnitId,
+                                 @Header(name = EVENT_KEY, required = false) String eventKey) {
+        // a worker's units and received objects were not split from a list, there is nothing to aggregate them into
+        if (workUnitId != null) {
+            return "workUnitDoneChannel";
+        }
+        return eventKey == null ? "endChannel" : "eventDoneChannel";
+    }
+
+    @ServiceActivator(inputChannel = "workUnitDoneChannel")
+    public void workUnitDone(@Header(WORK_UNIT_ID) long workUnitId, @Header(JOB_STATUS) BatchStatus status) {
+        workUnits.complete(workUnitId, status == BatchStatus.COMPLETED);
+    }
+
+    @ServiceActivator(inputChannel = "eventDoneChannel")
+    public void eventDone(@Header(EVENT_KEY) String eventKey, @Header(JOB_STATUS) BatchStatus status) {
+        eventQueue.done(eventKey, status == BatchStatus.COMPLETED);
+    }
+
+    @ServiceActivator(inputChannel = "eventErrorChannel")
+    public void eventFailed(MessagingException ex) {
+        String eventKey = ex.getFailedMessage().getHeaders().get(EVENT_KEY, String.class);
+        log.error("Failed to ingest S3 object [{}/{}], leaving its message for redelivery", outputBucketName, eventKey, ex);
+        eventQueue.done(eventKey, false);
+    }
+
     @Aggregator(inputChannel = "endChannel")
-    public void shutdown() {
-        exit("Integration flow complete, shutting down JVM");
+    public void shutdown(List<Object> results) throws InterruptedException {
+        if ("manager".equals(role)) {
+            log.info("Queued [{}] S3 objects for workers as run [{}]", results.size(), runId);
+            failedUnits.addAndGet((int) workUnits.awaitRun(runId, pollInterval));
+        }
+        exit(String.format("Integration flow complete for [%s] files, shutting down JVM", results.size()));
     }
 
     @ServiceActivator(inputChannel = "application.errorChannel")
@@ -0,0 +1,57 @@
+package com.example.demo.integration.ingest;
+
+import com.example.demo.integration.parquet.PetParquet;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.api.ReadSupport;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.io.InputFile;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+
+/**
+ * Reads pet names from a Parquet file, local or in S3 depending on the {@link InputFile}. A restart reads the file
+ * again and skips the pets read before.
+ */
+public class ParquetPetItemReader extends AbstractItemCountingItemStreamItemReader<PetDto> {
+
+    private final InputFile inputFile;
+
+    private ParquetReader<Group> reader;
+
+    public ParquetPetItemReader(InputFile inputFile) {
+        this.inputFile = inputFile;
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        reader = new ParquetReader.Builder<Group>(inputFile) {
+            @Override
+            protected ReadSupport<Group> getReadSupport() {
+                return new GroupReadSupport();
+            }
+        }.build();
+    }
+
+    @Override
+    protected PetDto doRead() throws Exception {
+        Group group = reader.read();
+        if (group == null) {
+            return null;
+        }
+        PetDto pet = new PetDto();
+        pet.setId(group.getLong(PetParquet.ID, 0));
+        pet.setOwnerId(group.getLong(PetParquet.OWNER_ID, 0));
+        if (group.getFieldRepetitionCount(PetParquet.NAME) > 0) {
+            pet.setName(group.getString(PetParquet.NAME, 0));
+        }
+        return pet;
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+}
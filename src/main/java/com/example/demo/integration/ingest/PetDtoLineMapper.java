@@ -0,0 +1,79 @@
+package com.example.demo.integration.ingest;
+
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.LineMapper;
+
+/**
+ * Parses an {@code id,owner_id,name} line straight into a {@link PetDto}, without tokenizing into a field set or binding
+ * properties through a bean wrapper. The name may be quoted as described in RFC 4180.
+ */
+public class PetDtoLineMapper implements LineMapper<PetDto> {
+
+    @Override
+    public PetDto mapLine(String line, int lineNumber) {
+        int end = line.length();
+        int idEnd = line.indexOf(',');
+        int ownerIdEnd = idEnd < 0 ? -1 : line.indexOf(',', idEnd + 1);
+        if (ownerIdEnd < 0) {
+            throw new FlatFileParseException("Expected 3 fields in line " + lineNumber, line, lineNumber);
+        }
+
+        PetDto pet = new PetDto();
+        pet.setId(parseLong(line, 0, idEnd, lineNumber));
+        pet.setOwnerId(ownerIdEnd == idEnd + 1 ? null : parseLong(line, idEnd + 1, ownerIdEnd, lineNumber));
+        pet.setName(parseName(line, ownerIdEnd + 1, end, lineNumber));
+        return pet;
+    }
+
+    private static long parseLong(String line, int start, int end, int lineNumber) {
+        boolean negative = start < end && line.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) {
+            throw new FlatFileParseException("Expected a number at column " + (start + 1) + " of line " + lineNumber, line, lineNumber);
+        }
+        // accumulated negatively like Long.parseLong, so Long.MIN_VALUE fits too
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new FlatFileParseException("Expected a number at column " + (start + 1) + " of line " + lineNumber, line, lineNumber);
+            }
+            if (value < limit / 10 || value * 10 < limit + digit) {
+                throw new FlatFileParseException("Number out of range at column " + (start + 1) + " of line " + lineNumber, line, lineNumber);
+            }
+            value = value * 10 - digit;
+        }
+        return negative ? value : -value;
+    }
+
+    private static String parseName(String line, int start, int end, int lineNumber) {
+        if (start == end || line.charAt(start) != '"') {
+            if (line.indexOf(',', start) >= 0) {
+                throw new FlatFileParseException("Expected 3 fields in line " + lineNumber, line, lineNumber);
+            }
+            return line.substring(start, end);
+        }
+        StringBuilder name = null;
+        int segment = start + 1;
+        for (int i = segment; i < end; i++) {
+            if (line.charAt(i) != '"') {
+                continue;
+            }
+            if (i + 1 < end && line.charAt(i + 1) == '"') {
+                // an escaped quote, keep one of the pair
+                if (name == null) {
+                    name = new StringBuilder(end - start);
+                }
+                name.append(line, segment, i + 1);
+                segment = i + 2;
+                i++;
+            } else if (i + 1 == end) {
+                return name == null ? line.substring(segment, i) : name.append(line, segment, i).toString();
+            } else {
+                break;
+            }
+        }
+        throw new FlatFileParseException("Unbalanced quotes in name of line " + lineNumber, line, lineNumber);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.demo.integration.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+/**
+ * Applies a whole chunk of pet names with one JDBC batch update instead of loading and merging every {@code Pet}. Names
+ * of pets that do not exist are filtered out before, by {@link ExistingPetItemProcessor}.
+ */
+@Slf4j
+public class PetNameItemWriter implements ItemWriter<PetDto> {
+
+    private static final String UPDATE_PET_NAME = "update pet set name = ? where id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PetNameItemWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void write(List<? extends PetDto> items) {
+        int[][] updateCounts = jdbcTemplate.batchUpdate(UPDATE_PET_NAME, items, items.size(), (ps, pet) -> {
+            ps.setString(1, pet.getName());
+            ps.setLong(2, pet.getId());
+        });
+        int missing = 0;
+        for (int[] batch : updateCounts) {
+            for (int updateCount : batch) {
+                if (updateCount == 0) {
+                    missing++;
+                }
+            }
+        }
+        if (missing > 0) {
+            log.debug("Skipped [{}] of [{}] pets deleted since they were looked up", missing, items.size());
+        }
+    }
+}
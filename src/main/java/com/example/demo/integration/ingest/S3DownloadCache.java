@@ -0,0 +1,116 @@
+package com.example.demo.integration.ingest;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.example.demo.integration.S3RangedDownloader;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Downloads S3 objects into a local directory bounded by a byte budget and a number of files fetched ahead of their
+ * ingest jobs. A download waits while the budget is taken. A file is deleted as soon as its job commits, as its object
+ * is removed from the bucket then and will not be read again. Every file keeps the ETag it was downloaded with next to
+ * it, so a retried run reuses a file left behind when the object has not changed since. Files of jobs that did not
+ * complete are kept for their restart and no longer counted against the budget.
+ */
+@Slf4j
+public class S3DownloadCache {
+
+    private static final String ETAG_SUFFIX = ".etag";
+
+    private final S3RangedDownloader downloader;
+    private final File directory;
+    private final long budgetBytes;
+    private final int prefetch;
+    private final Map<File, Long> inUse = new HashMap<>();
+    private long usedBytes;
+
+    public S3DownloadCache(S3RangedDownloader downloader, File directory, long budgetBytes, int prefetch) {
+        this.downloader = downloader;
+        this.directory = directory;
+        this.budgetBytes = budgetBytes;
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * @return the local copy of the object, downloaded unless a file with the same ETag is already there
+     */
+    public File fetch(S3ObjectSummary object) throws InterruptedException, IOException {
+        File file = S3RangedDownloader.localFile(directory, object.getKey());
+        File etagFile = new File(file.getPath() + ETAG_SUFFIX);
+        synchronized (this) {
+            while (inUse.size() >= prefetch) {
+                wait();
+            }
+            reserve(object.getSize());
+            inUse.put(file, object.getSize());
+        }
+        try {
+            if (file.length() == object.getSize() && object.getETag().equals(readEtag(etagFile))) {
+                log.info("Reusing [{}] bytes of unchanged [{}/{}] from [{}]", object.getSize(), object.getBucketName(), object.getKey(), file);
+                return file;
+            }
+            download(object, file, etagFile);
+            return file;
+        } catch (RuntimeException | IOException | InterruptedException e) {
+            release(file, false);
+            throw e;
+        }
+    }
+
+    /**
+     * Hands a file back once its job has ended, freeing its share of the budget. A committed file is deleted, any other
+     * file is kept for the job's restart outside the budget.
+     */
+    public void release(File file, boolean committed) {
+        synchronized (this) {
+            // a file of a resumed run was not downloaded through the cache
+            Long size = inUse.remove(file);
+            if (size != null) {
+                usedBytes -= size;
+                notifyAll();
+            }
+        }
+        if (committed) {
+            log.info("Deleting file [{}]", file);
+            delete(file);
+        }
+    }
+
+    private void reserve(long size) throws InterruptedException {
+        // an object larger than the whole budget still gets through once nothing else is held
+        while (usedBytes > 0 && usedBytes + size > budgetBytes) {
+            wait();
+        }
+        usedBytes += size;
+    }
+
+    private void download(S3ObjectSummary object, File file, File etagFile) throws InterruptedException, IOException {
+        log.info("Downloading [{}] bytes from [{}/{}]", object.getSize(), object.getBucketName(), object.getKey());
+        file.getParentFile().mkdirs();
+        File partial = new File(file.getPath() + ".part");
+        // the ETag constraint keeps the file and its ETag in step if the object is replaced while listed
+        downloader.download(object.getBucketName(), object.getKey(), object.getSize(), object.getETag(), partial);
+        Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.writeString(etagFile.toPath(), object.getETag());
+    }
+
+    private static String readEtag(File etagFile) {
+        try {
+            return etagFile.exists() ? Files.readString(etagFile.toPath(), StandardCharsets.UTF_8) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void delete(File file) {
+        file.delete();
+        new File(file.getPath() + ETAG_SUFFIX).delete();
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.demo.integration.ingest;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.Protocol;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+@Configuration
+@Profile("ingestion")
+@ConditionalOnProperty(name = "ingest.source", havingValue = "events")
+public class S3EventConfiguration {
+
+    private final String sqsUrl;
+    private final String region;
+    private final String protocol;
+    private final String accessKey;
+    private final String secretKey;
+    private final String queueName;
+    private final int maxMessages;
+    private final int waitSeconds;
+    private final int visibilitySeconds;
+    private final long drainSeconds;
+
+    public S3EventConfiguration(
+            @Value("${aws.sqs.url}") String sqsUrl,
+            @Value("${aws.s3.region}") String region,
+            @Value("${aws.s3.protocol}") String protocol,
+            @Value("${aws.s3.accessKey}") String accessKey,
+            @Value("${aws.s3.secretKey}") String secretKey,
+            @Value("${aws.sqs.queueName}") String queueName,
+            @Value("${aws.sqs.maxMessages}") int maxMessages,
+            @Value("${aws.sqs.waitSeconds}") int waitSeconds,
+            @Value("${aws.sqs.visibilitySeconds}") int visibilitySeconds,
+            @Value("${ingest.drainSeconds}") long drainSeconds) {
+        this.sqsUrl = sqsUrl;
+        this.region = region;
+        this.protocol = protocol;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.queueName = queueName;
+        this.maxMessages = maxMessages;
+        this.waitSeconds = waitSeconds;
+        this.visibilitySeconds = visibilitySeconds;
+        this.drainSeconds = drainSeconds;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public AmazonSQS amazonSQS() {
+        ClientConfiguration clientConfiguration = new ClientConfiguration();
+        clientConfiguration.setProtocol(Protocol.valueOf(protocol));
+        return AmazonSQSClientBuilder
+                .standard()
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(sqsUrl, region))
+                .withClientConfiguration(clientConfiguration)
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials(accessKey, secretKey)))
+                .build();
+    }
+
+    @Bean
+    public S3EventQueue s3EventQueue(AmazonSQS amazonSQS, AmazonS3 amazonS3, @Value("${aws.s3.outputBucketName}") String outputBucketName) {
+        String queueUrl = amazonSQS.getQueueUrl(queueName).getQueueUrl();
+        return new S3EventQueue(amazonSQS, amazonS3, queueUrl, outputBucketName, maxMessages, waitSeconds, visibilitySeconds, drainSeconds * 1000);
+    }
+}
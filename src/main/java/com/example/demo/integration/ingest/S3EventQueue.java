@@ -0,0 +1,308 @@
+package com.example.demo.integration.ingest;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.event.S3EventNotification;
+import com.amazonaws.services.s3.event.S3EventNotification.S3EventNotificationRecord;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receives the objects created in the output bucket from the SQS queue its S3 event notifications are sent to. A message
+ * is deleted once every object it announced has been ingested; a message whose ingestion did not complete is left to
+ * become visible again after the visibility timeout, so it is retried or moved to the queue's dead letter queue.
+ * <p>
+ * SQS delivers at least once and S3 may send an event more than once. A message received again while its objects are
+ * in flight only renews the receipt handle used to delete it. An event for an object that is gone, because an earlier
+ * delivery ingested and removed it, or that has been replaced since, is dropped with its message. A message that is not
+ * an S3 event notification is skipped and left to the queue's redrive policy.
+ * <p>
+ * Stopping drains the queue: nothing more is received, messages waiting for a worker are handed back to SQS and the
+ * objects already dispatched get up to {@code drainMillis} to finish.
+ */
+@Slf4j
+public class S3EventQueue implements SmartLifecycle {
+
+    private static final int NOT_FOUND = 404;
+
+    private final AmazonSQS amazonSQS;
+    private final AmazonS3 amazonS3;
+    private final String queueUrl;
+    private final String bucket;
+    private final int maxMessages;
+    private final int waitSeconds;
+    private final int visibilitySeconds;
+    private final long drainMillis;
+    private final Map<String, Delivery> deliveries = new HashMap<>();
+    private final Map<String, Delivery> inFlight = new HashMap<>();
+    private final Deque<S3ObjectSummary> received = new ArrayDeque<>();
+    private volatile boolean running;
+
+    public S3EventQueue(AmazonSQS amazonSQS, AmazonS3 amazonS3, String queueUrl, String bucket, int maxMessages, int waitSeconds,
+                        int visibilitySeconds, long drainMillis) {
+        this.amazonSQS = amazonSQS;
+        this.amazonS3 = amazonS3;
+        this.queueUrl = queueUrl;
+        this.bucket = bucket;
+        this.maxMessages = maxMessages;
+        this.waitSeconds = waitSeconds;
+        this.visibilitySeconds = visibilitySeconds;
+        this.drainMillis = drainMillis;
+    }
+
+    /**
+     * @return the next object created, waiting up to the queue's long poll for one, or {@code null} if none arrived or
+     * the queue is draining
+     */
+    public S3ObjectSummary next() {
+        synchronized (this) {
+            if (!received.isEmpty()) {
+                return received.poll();
+            }
+            if (!running) {
+                return null;
+            }
+        }
+        List<Message> messages = amazonSQS.receiveMessage(new ReceiveMessageRequest(queueUrl)
+                .withMaxNumberOfMessages(maxMessages)
+                .withWaitTimeSeconds(waitSeconds)
+                .withVisibilityTimeout(visibilitySeconds)).getMessages();
+        List<String> finished = new ArrayList<>();
+        List<String> released = new ArrayList<>();
+        for (Message message : messages) {
+            synchronized (this) {
+                if (!running) {
+                    released.add(message.getReceiptHandle());
+                    continue;
+                }
+                if (redelivered(message)) {
+                    continue;
+                }
+            }
+            // the HEAD requests for the message's objects are made without holding up the workers finishing theirs
+            Delivery delivery = parse(message);
+            if (delivery == null) {
+                continue;
+            }
+            synchronized (this) {
+                if (accept(delivery)) {
+                    finished.add(delivery.receiptHandle);
+                }
+            }
+        }
+        finished.forEach(this::delete);
+        released.forEach(this::release);
+        synchronized (this) {
+            return received.poll();
+        }
+    }
+
+    /**
+     * Finishes an object handed out by {@link #next()}, deleting its message when it was the message's last object.
+     */
+    public void done(String key, boolean completed) {
+        String receiptHandle = null;
+        synchronized (this) {
+            Delivery delivery = inFlight.remove(key);
+            if (delivery == null) {
+                return;
+            }
+            delivery.failed |= !completed;
+            if (--delivery.pending == 0) {
+                deliveries.remove(delivery.messageId);
+                if (delivery.failed) {
+                    log.warn("Leaving message [{}] for redelivery, not all of its objects were ingested", delivery.messageId);
+                } else {
+                    receiptHandle = delivery.receiptHandle;
+                }
+            }
+            notifyAll();
+        }
+        if (receiptHandle != null) {
+            delete(receiptHandle);
+        }
+    }
+
+    private boolean redelivered(Message message) {
+        Delivery redelivered = deliveries.get(message.getMessageId());
+        if (redelivered == null) {
+            return false;
+        }
+        // only the latest receipt handle is sure to delete the message
+        log.info("Message [{}] was redelivered while in flight", message.getMessageId());
+        redelivered.receiptHandle = message.getReceiptHandle();
+        return true;
+    }
+
+    /**
+     * @return the objects the message announces that are still to be ingested, or {@code null} if the message is not an
+     * S3 event notification
+     */
+    private Delivery parse(Message message) {
+        List<S3EventNotificationRecord> records;
+        try {
+            records = S3EventNotification.parseJson(message.getBody()).getRecords();
+        } catch (SdkClientException e) {
+            // left to the queue's redrive policy, a body that does not parse never will
+            log.warn("Skipping message [{}], its body is not an S3 event notification", message.getMessageId(), e);
+            return null;
+        }
+        Delivery delivery = new Delivery(message.getMessageId(), message.getReceiptHandle());
+        if (records == null) {
+            // the test event sent when notifications are configured
+            return delivery;
+        }
+        for (S3EventNotificationRecord record : records) {
+            try {
+                S3ObjectSummary object = created(record);
+                if (object != null) {
+                    delivery.objects.add(object);
+                }
+            } catch (SdkClientException e) {
+                log.warn("Postponing message [{}], an object it announces could not be checked", message.getMessageId(), e);
+                delivery.failed = true;
+            }
+        }
+        return delivery;
+    }
+
+    /**
+     * @return whether the message has nothing left to ingest and can be deleted
+     */
+    private boolean accept(Delivery delivery) {
+        for (S3ObjectSummary object : delivery.objects) {
+            if (inFlight.containsKey(object.getKey())) {
+                // a later event for an object being ingested waits for its visibility timeout, by then the object is gone
+                log.info("Postponing message [{}] as [{}/{}] is in flight", delivery.messageId, bucket, object.getKey());
+                delivery.failed = true;
+                continue;
+            }
+            inFlight.put(object.getKey(), delivery);
+            delivery.pending++;
+            received.add(object);
+        }
+        delivery.objects.clear();
+        if (delivery.pending > 0) {
+            deliveries.put(delivery.messageId, delivery);
+            return false;
+        }
+        return !delivery.failed;
+    }
+
+    private S3ObjectSummary created(S3EventNotificationRecord record) {
+        String key = record.getS3().getObject().getUrlDecodedKey();
+        if (!record.getEventName().startsWith("ObjectCreated:") || !bucket.equals(record.getS3().getBucket().getName())) {
+            log.warn("Ignoring [{}] event for [{}/{}]", record.getEventName(), record.getS3().getBucket().getName(), key);
+            return null;
+        }
+        ObjectMetadata metadata;
+        try {
+            metadata = amazonS3.getObjectMetadata(bucket, key);
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() != NOT_FOUND) {
+                throw e;
+            }
+            log.info("Dropping event for [{}/{}], the object has already been ingested", bucket, key);
+            return null;
+        }
+        String eTag = record.getS3().getObject().geteTag();
+        if (eTag != null && !unquoted(eTag).equals(unquoted(metadata.getETag()))) {
+            log.info("Dropping event for [{}/{}], the object has been replaced since", bucket, key);
+            return null;
+        }
+        S3ObjectSummary object = new S3ObjectSummary();
+        object.setBucketName(bucket);
+        object.setKey(key);
+        object.setSize(metadata.getContentLength());
+        object.setETag(metadata.getETag());
+        return object;
+    }
+
+    private void delete(String receiptHandle) {
+        amazonSQS.deleteMessage(queueUrl, receiptHandle);
+    }
+
+    private void release(String receiptHandle) {
+        // visible again straight away, for another JVM to pick up
+        amazonSQS.changeMessageVisibility(queueUrl, receiptHandle, 0);
+    }
+
+    private static String unquoted(String eTag) {
+        return eTag == null ? null : eTag.replace("\"", "");
+    }
+
+    @Override
+    public synchronized void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        List<String> released = new ArrayList<>();
+        synchronized (this) {
+            running = false;
+            while (!received.isEmpty()) {
+                Delivery delivery = inFlight.remove(received.poll().getKey());
+                delivery.failed = true;
+                if (--delivery.pending == 0) {
+                    deliveries.remove(delivery.messageId);
+                    released.add(delivery.receiptHandle);
+                }
+            }
+        }
+        released.forEach(this::release);
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + drainMillis;
+            try {
+                while (!inFlight.isEmpty() && System.currentTimeMillis() < deadline) {
+                    log.info("Draining [{}] S3 objects in flight", inFlight.size());
+                    wait(Math.max(1, Math.min(5000, deadline - System.currentTimeMillis())));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!inFlight.isEmpty()) {
+                log.warn("Stopped with [{}] S3 objects in flight, their messages will be redelivered", inFlight.size());
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // stops before the endpoints and executors the objects in flight still need
+        return Integer.MAX_VALUE;
+    }
+
+    private static class Delivery {
+
+        private final String messageId;
+        private String receiptHandle;
+        // announced objects that have not been handed to the queue yet
+        private final List<S3ObjectSummary> objects = new ArrayList<>();
+        private int pending;
+        private boolean failed;
+
+        Delivery(String messageId, String receiptHandle) {
+            this.messageId = messageId;
+            this.receiptHandle = receiptHandle;
+        }
+    }
+}
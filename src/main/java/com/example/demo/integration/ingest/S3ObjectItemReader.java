@@ -0,0 +1,216 @@
+package com.example.demo.integration.ingest;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.example.demo.integration.CompressionCodec;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.batch.item.file.separator.RecordSeparatorPolicy;
+import org.springframework.batch.item.file.separator.SimpleRecordSeparatorPolicy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads lines straight from an S3 object stream through a large buffer. The byte offset after the last record read is
+ * saved on every commit, so a restart asks S3 for the rest of the object from that offset instead of reading it again.
+ * Objects with a compressed key extension are decompressed on the fly, and since a compressed stream cannot be entered
+ * at an offset, they are restarted by reading from the start and skipping the records already read. The ETag read
+ * first is saved too, and a restart only reads the same version of the object, failing if it was replaced since.
+ */
+public class S3ObjectItemReader<T> extends ItemStreamSupport implements ItemStreamReader<T> {
+
+    private static final String OFFSET = "offset",
+                                RECORD_COUNT = "record.count",
+                                ETAG = "etag";
+
+    private static final int REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+
+    private final AmazonS3 amazonS3;
+    private final String bucket;
+    private final String key;
+    private final LineMapper<T> lineMapper;
+    private final CompressionCodec codec;
+    private final byte[] buffer;
+
+    private RecordSeparatorPolicy recordSeparatorPolicy = new SimpleRecordSeparatorPolicy();
+    private int linesToSkip;
+
+    private S3ObjectInputStream objectInput;
+    private InputStream input;
+    private int position;
+    private int limit;
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private long offset;
+    private long recordCount;
+    private String eTag;
+
+    public S3ObjectItemReader(AmazonS3 amazonS3, String bucket, String key, LineMapper<T> lineMapper, int bufferSize) {
+        this.amazonS3 = amazonS3;
+        this.bucket = bucket;
+        this.key = key;
+        this.lineMapper = lineMapper;
+        this.codec = CompressionCodec.forName(key);
+        this.buffer = new byte[bufferSize];
+    }
+
+    public void setRecordSeparatorPolicy(RecordSeparatorPolicy recordSeparatorPolicy) {
+        this.recordSeparatorPolicy = recordSeparatorPolicy;
+    }
+
+    public void setLinesToSkip(int linesToSkip) {
+        this.linesToSkip = linesToSkip;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+        super.open(executionContext);
+        offset = executionContext.getLong(getExecutionContextKey(OFFSET), 0L);
+        recordCount = executionContext.getLong(getExecutionContextKey(RECORD_COUNT), 0L);
+        eTag = executionContext.getString(getExecutionContextKey(ETAG), null);
+        long recordsToSkip = 0;
+        if (codec != CompressionCodec.NONE) {
+            recordsToSkip = recordCount;
+            offset = 0;
+            recordCount = 0;
+        }
+        GetObjectRequest request = new GetObjectRequest(bucket, key);
+        if (offset > 0) {
+            request.setRange(offset);
+        }
+        if (eTag != null) {
+            // records read before the restart must not be continued with the bytes of another version
+            request.withMatchingETagConstraint(eTag);
+        }
+        position = 0;
+        limit = 0;
+        try {
+            S3Object object = amazonS3.getObject(request);
+            if (object == null) {
+                throw new ItemStreamException("S3 object " + bucket + "/" + key + " changed since the step was started, it cannot be restarted");
+            }
+            eTag = object.getObjectMetadata().getETag();
+            objectInput = object.getObjectContent();
+            input = codec.decompress(objectInput);
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() != REQUESTED_RANGE_NOT_SATISFIABLE) {
+                throw e;
+            }
+            // the previous run had already read the whole object
+            input = null;
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to open " + bucket + "/" + key, e);
+        }
+        try {
+            if (offset == 0) {
+                for (int i = 0; i < linesToSkip; i++) {
+                    readLine();
+                }
+            }
+            while (recordCount < recordsToSkip && readRecord() != null) {
+                recordCount++;
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to skip to the restart position of " + bucket + "/" + key, e);
+        }
+    }
+
+    @Override
+    public T read() throws Exception {
+        String record = readRecord();
+        if (record == null) {
+            return null;
+        }
+        recordCount++;
+        return lineMapper.mapLine(recordSeparatorPolicy.postProcess(record), (int) recordCount);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+        super.update(executionContext);
+        executionContext.putLong(getExecutionContextKey(OFFSET), offset);
+        executionContext.putLong(getExecutionContextKey(RECORD_COUNT), recordCount);
+        if (eTag != null) {
+            executionContext.putString(getExecutionContextKey(ETAG), eTag);
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (objectInput != null) {
+            // stops the connection draining whatever is left of the object
+            objectInput.abort();
+            objectInput = null;
+        }
+        input = null;
+    }
+
+    private String readRecord() throws IOException {
+        String record = readLine();
+        if (record == null) {
+            return null;
+        }
+        while (!recordSeparatorPolicy.isEndOfRecord(record)) {
+            String next = readLine();
+            if (next == null) {
+                throw new FlatFileParseException("Unexpected end of object before record complete", record, (int) recordCount + 1);
+            }
+            record = recordSeparatorPolicy.preProcess(record) + next;
+        }
+        return record;
+    }
+
+    private String readLine() throws IOException {
+        lineLength = 0;
+        while (true) {
+            if (position == limit && !fill()) {
+                return lineLength == 0 ? null : decodeLine();
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            append(start, position - start);
+            offset += position - start;
+            if (position < limit) {
+                position++;
+                offset++;
+                return decodeLine();
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (input == null) {
+            return false;
+        }
+        int read = input.read(buffer);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    private void append(int start, int length) {
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(buffer, start, line, lineLength, length);
+        lineLength += length;
+    }
+
+    private String decodeLine() {
+        int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.demo.integration.metadata;
+
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.AbstractStep;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.function.SingletonSupplier;
+
+import java.util.function.Supplier;
+
+@Configuration
+public class BatchMetadataConfiguration {
+
+    /**
+     * Points every step bean at a {@link CheckpointJobRepository}. The step builders hold their own reference to the
+     * batch configurer's repository, so the steps are switched over once built; jobs and the launcher keep the plain
+     * repository, their updates are not per chunk.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "batch.metadata.mode", havingValue = "checkpoint")
+    public static BeanPostProcessor checkpointJobRepositoryPostProcessor(ObjectProvider<JobRepository> jobRepository,
+                                                                         @Value("${batch.metadata.checkpointChunks}") int checkpointChunks,
+                                                                         @Value("${batch.metadata.checkpointMillis}") long checkpointMillis) {
+        Supplier<JobRepository> checkpointJobRepository = SingletonSupplier.of(
+                () -> new CheckpointJobRepository(jobRepository.getObject(), checkpointChunks, checkpointMillis));
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof AbstractStep) {
+                    ((AbstractStep) bean).setJobRepository(checkpointJobRepository.get());
+                }
+                return bean;
+            }
+        };
+    }
+}
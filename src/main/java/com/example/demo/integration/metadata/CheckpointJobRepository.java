@@ -0,0 +1,131 @@
+package com.example.demo.integration.metadata;
+
+import org.springframework.batch.core.*;
+import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
+import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.JobRestartException;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces the step execution updates a chunk oriented step makes after every chunk. While a step runs its counters
+ * and execution context are written with the first chunk committed after {@code checkpointChunks} chunks or
+ * {@code checkpointMillis} since the last write, and always when the step ends. The counts and context written are the
+ * latest ones, so a restarted step carries on from its last checkpoint and repeats the chunks committed after it.
+ * Every other call goes straight to the repository.
+ */
+public class CheckpointJobRepository implements JobRepository {
+
+    private final JobRepository delegate;
+    private final int checkpointChunks;
+    private final long checkpointMillis;
+    private final Map<Long, Checkpoint> checkpoints = new ConcurrentHashMap<>();
+
+    public CheckpointJobRepository(JobRepository delegate, int checkpointChunks, long checkpointMillis) {
+        this.delegate = delegate;
+        this.checkpointChunks = checkpointChunks;
+        this.checkpointMillis = checkpointMillis;
+    }
+
+    @Override
+    public void updateExecutionContext(StepExecution stepExecution) {
+        if (stepExecution.getStatus() == BatchStatus.STARTED) {
+            Checkpoint checkpoint = checkpoints.computeIfAbsent(stepExecution.getId(), id -> new Checkpoint());
+            // the context the streams were opened with is always written, it may hold what a restart needs to reopen them
+            if (checkpoint.contextWritten) {
+                // a chunk saves its context just before its counters, both are written or neither
+                checkpoint.due = checkpoint.chunks + 1 >= checkpointChunks || System.currentTimeMillis() - checkpoint.writtenAt >= checkpointMillis;
+                if (!checkpoint.due) {
+                    return;
+                }
+            }
+            checkpoint.contextWritten = true;
+        }
+        delegate.updateExecutionContext(stepExecution);
+    }
+
+    @Override
+    public void update(StepExecution stepExecution) {
+        if (stepExecution.getStatus() != BatchStatus.STARTED) {
+            checkpoints.remove(stepExecution.getId());
+            delegate.update(stepExecution);
+            return;
+        }
+        Checkpoint checkpoint = checkpoints.computeIfAbsent(stepExecution.getId(), id -> new Checkpoint());
+        if (checkpoint.writtenAt != 0 && !checkpoint.due) {
+            checkpoint.chunks++;
+            return;
+        }
+        delegate.update(stepExecution);
+        checkpoint.chunks = 0;
+        checkpoint.due = false;
+        checkpoint.writtenAt = System.currentTimeMillis();
+    }
+
+    @Override
+    public boolean isJobInstanceExists(String jobName, JobParameters jobParameters) {
+        return delegate.isJobInstanceExists(jobName, jobParameters);
+    }
+
+    @Override
+    public JobInstance createJobInstance(String jobName, JobParameters jobParameters) {
+        return delegate.createJobInstance(jobName, jobParameters);
+    }
+
+    @Override
+    public JobExecution createJobExecution(JobInstance jobInstance, JobParameters jobParameters, String jobConfigurationLocation) {
+        return delegate.createJobExecution(jobInstance, jobParameters, jobConfigurationLocation);
+    }
+
+    @Override
+    public JobExecution createJobExecution(String jobName, JobParameters jobParameters)
+            throws JobExecutionAlreadyRunningException, JobRestartException, JobInstanceAlreadyCompleteException {
+        return delegate.createJobExecution(jobName, jobParameters);
+    }
+
+    @Override
+    public void update(JobExecution jobExecution) {
+        delegate.update(jobExecution);
+    }
+
+    @Override
+    public void add(StepExecution stepExecution) {
+        delegate.add(stepExecution);
+    }
+
+    @Override
+    public void addAll(Collection<StepExecution> stepExecutions) {
+        delegate.addAll(stepExecutions);
+    }
+
+    @Override
+    public void updateExecutionContext(JobExecution jobExecution) {
+        delegate.updateExecutionContext(jobExecution);
+    }
+
+    @Override
+    public StepExecution getLastStepExecution(JobInstance jobInstance, String stepName) {
+        return delegate.getLastStepExecution(jobInstance, stepName);
+    }
+
+    @Override
+    public int getStepExecutionCount(JobInstance jobInstance, String stepName) {
+        return delegate.getStepExecutionCount(jobInstance, stepName);
+    }
+
+    @Override
+    public JobExecution getLastJobExecution(String jobName, JobParameters jobParameters) {
+        return delegate.getLastJobExecution(jobName, jobParameters);
+    }
+
+    private static class Checkpoint {
+
+        private int chunks;
+        private long writtenAt;
+        private boolean due;
+        private boolean contextWritten;
+    }
+}
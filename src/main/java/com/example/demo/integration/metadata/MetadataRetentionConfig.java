@@ -0,0 +1,74 @@
+package com.example.demo.integration.metadata;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.*;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.Duration;
+import java.util.Date;
+
+@Configuration
+@Slf4j
+@Profile("retention")
+public class MetadataRetentionConfig {
+
+    private static final String CUTOFF = "cutoff";
+
+    private final StepBuilderFactory stepBuilderFactory;
+    private final JobBuilderFactory jobBuilderFactory;
+    private final int retentionDays;
+    private final int batchSize;
+
+    public MetadataRetentionConfig(StepBuilderFactory stepBuilderFactory, JobBuilderFactory jobBuilderFactory,
+                                   @Value("${batch.metadata.retentionDays}") int retentionDays,
+                                   @Value("${batch.metadata.retentionBatchSize}") int batchSize) {
+        this.stepBuilderFactory = stepBuilderFactory;
+        this.jobBuilderFactory = jobBuilderFactory;
+        this.retentionDays = retentionDays;
+        this.batchSize = batchSize;
+    }
+
+    @Bean
+    @StepScope
+    public MetadataRetentionTasklet metadataRetentionTasklet(NamedParameterJdbcTemplate jdbcTemplate, @Value("#{jobParameters['cutoff']}") Date cutoff) {
+        return new MetadataRetentionTasklet(jdbcTemplate, cutoff, batchSize);
+    }
+
+    @Bean
+    public Step metadataRetentionStep(MetadataRetentionTasklet metadataRetentionTasklet) {
+        return stepBuilderFactory.get("metadataRetention")
+                .tasklet(metadataRetentionTasklet)
+                .build();
+    }
+
+    @Bean(name = "metadataRetentionJob")
+    public Job metadataRetentionJob(@Qualifier("metadataRetentionStep") Step metadataRetentionStep) {
+        return jobBuilderFactory.get("metadataRetentionJob")
+                .start(metadataRetentionStep)
+                .build();
+    }
+
+    @Bean
+    public ApplicationRunner metadataRetentionRunner(JobLauncher jobLauncher, @Qualifier("metadataRetentionJob") Job metadataRetentionJob) {
+        return args -> {
+            JobParameters jobParameters = new JobParametersBuilder()
+                    .addDate(CUTOFF, new Date(System.currentTimeMillis() - Duration.ofDays(retentionDays).toMillis()))
+                    .toJobParameters();
+            log.info("Launching metadataRetentionJob with parameters [{}]", jobParameters);
+            JobExecution jobExecution = jobLauncher.run(metadataRetentionJob, jobParameters);
+            log.info("Job execution [{}] ended with status [{}], shutting down JVM", jobExecution.getId(), jobExecution.getStatus());
+            // like the integration flows, a single run that exits with its outcome
+            System.exit(jobExecution.getStatus() == BatchStatus.COMPLETED ? 0 : 1);
+        };
+    }
+}
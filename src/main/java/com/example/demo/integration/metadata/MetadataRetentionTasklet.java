@@ -0,0 +1,60 @@
+package com.example.demo.integration.metadata;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deletes the Spring Batch metadata of job instances whose executions all ended before the cutoff, {@code batchSize}
+ * instances per transaction. Instances with an execution still running, or left without an end time by a crash, are
+ * kept. Every call selects what is left to delete, so a restart simply carries on.
+ */
+@Slf4j
+public class MetadataRetentionTasklet implements Tasklet {
+
+    private static final String EXPIRED_INSTANCES = "select JOB_INSTANCE_ID from BATCH_JOB_EXECUTION group by JOB_INSTANCE_ID "
+            + "having count(END_TIME) = count(*) and max(END_TIME) < :cutoff order by JOB_INSTANCE_ID limit :limit";
+
+    private static final String EXECUTIONS = "select JOB_EXECUTION_ID from BATCH_JOB_EXECUTION where JOB_INSTANCE_ID in (:ids)";
+
+    // children first, there are no cascading foreign keys
+    private static final List<String> DELETES = List.of(
+            "delete from BATCH_STEP_EXECUTION_CONTEXT where STEP_EXECUTION_ID in "
+                    + "(select STEP_EXECUTION_ID from BATCH_STEP_EXECUTION where JOB_EXECUTION_ID in (" + EXECUTIONS + "))",
+            "delete from BATCH_STEP_EXECUTION where JOB_EXECUTION_ID in (" + EXECUTIONS + ")",
+            "delete from BATCH_JOB_EXECUTION_CONTEXT where JOB_EXECUTION_ID in (" + EXECUTIONS + ")",
+            "delete from BATCH_JOB_EXECUTION_PARAMS where JOB_EXECUTION_ID in (" + EXECUTIONS + ")",
+            "delete from BATCH_JOB_EXECUTION where JOB_INSTANCE_ID in (:ids)",
+            "delete from BATCH_JOB_INSTANCE where JOB_INSTANCE_ID in (:ids)");
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Date cutoff;
+    private final int batchSize;
+
+    public MetadataRetentionTasklet(NamedParameterJdbcTemplate jdbcTemplate, Date cutoff, int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cutoff = cutoff;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) {
+        List<Long> ids = jdbcTemplate.queryForList(EXPIRED_INSTANCES, Map.of("cutoff", cutoff, "limit", batchSize), Long.class);
+        if (ids.isEmpty()) {
+            return RepeatStatus.FINISHED;
+        }
+        for (String delete : DELETES) {
+            jdbcTemplate.update(delete, Map.of("ids", ids));
+        }
+        contribution.incrementWriteCount(ids.size());
+        log.info("Deleted the metadata of [{}] job instances finished before [{}]", ids.size(), cutoff);
+        return RepeatStatus.CONTINUABLE;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.demo.integration.parquet;
+
+import org.apache.parquet.io.DelegatingSeekableInputStream;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Parquet input straight from the local file system, without the Hadoop {@code FileSystem}.
+ */
+public class LocalInputFile implements InputFile {
+
+    private final Path path;
+
+    public LocalInputFile(Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public long getLength() throws IOException {
+        return Files.size(path);
+    }
+
+    @Override
+    public SeekableInputStream newStream() throws IOException {
+        FileChannel channel = FileChannel.open(path);
+        return new DelegatingSeekableInputStream(Channels.newInputStream(channel)) {
+            @Override
+            public long getPos() throws IOException {
+                return channel.position();
+            }
+
+            @Override
+            public void seek(long newPos) throws IOException {
+                channel.position(newPos);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
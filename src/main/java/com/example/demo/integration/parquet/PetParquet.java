@@ -0,0 +1,25 @@
+package com.example.demo.integration.parquet;
+
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Types;
+
+/**
+ * Parquet schema of the {@code id,owner_id,name} exchange file.
+ */
+public final class PetParquet {
+
+    public static final String ID = "id",
+                               OWNER_ID = "owner_id",
+                               NAME = "name";
+
+    public static final MessageType SCHEMA = Types.buildMessage()
+            .required(PrimitiveTypeName.INT64).named(ID)
+            .required(PrimitiveTypeName.INT64).named(OWNER_ID)
+            .optional(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named(NAME)
+            .named("pet");
+
+    private PetParquet() {
+    }
+}
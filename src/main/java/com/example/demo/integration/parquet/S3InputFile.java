@@ -0,0 +1,115 @@
+package com.example.demo.integration.parquet;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import org.apache.parquet.io.DelegatingSeekableInputStream;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parquet input read from an S3 object with ranged GETs. A GET is only issued from the position of the first read
+ * after a seek, so reading the footer and then every row group costs one request each rather than a download.
+ */
+public class S3InputFile implements InputFile {
+
+    private final AmazonS3 amazonS3;
+    private final String bucket;
+    private final String key;
+    private long length = -1;
+
+    public S3InputFile(AmazonS3 amazonS3, String bucket, String key) {
+        this.amazonS3 = amazonS3;
+        this.bucket = bucket;
+        this.key = key;
+    }
+
+    @Override
+    public long getLength() {
+        if (length < 0) {
+            length = amazonS3.getObjectMetadata(bucket, key).getContentLength();
+        }
+        return length;
+    }
+
+    @Override
+    public SeekableInputStream newStream() {
+        RangedObjectInputStream in = new RangedObjectInputStream();
+        return new DelegatingSeekableInputStream(in) {
+            @Override
+            public long getPos() {
+                return in.position;
+            }
+
+            @Override
+            public void seek(long newPos) {
+                in.seek(newPos);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return bucket + "/" + key;
+    }
+
+    private class RangedObjectInputStream extends InputStream {
+
+        private S3ObjectInputStream object;
+        private long position;
+
+        void seek(long newPosition) {
+            if (newPosition != position) {
+                abort();
+                position = newPosition;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position >= getLength()) {
+                return -1;
+            }
+            int b = open().read();
+            if (b >= 0) {
+                position++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= getLength()) {
+                return -1;
+            }
+            int read = open().read(b, off, len);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() {
+            abort();
+        }
+
+        private InputStream open() {
+            if (object == null) {
+                object = amazonS3.getObject(new GetObjectRequest(bucket, key).withRange(position)).getObjectContent();
+            }
+            return object;
+        }
+
+        private void abort() {
+            if (object != null) {
+                // stops the connection draining the rest of the range
+                object.abort();
+                object = null;
+            }
+        }
+    }
+}
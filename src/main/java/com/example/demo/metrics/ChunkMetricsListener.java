@@ -0,0 +1,51 @@
+package com.example.demo.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+
+/**
+ * Times every chunk from the first read to its commit or rollback as {@code batch.chunk}, tagged with the job, the step
+ * and whether the chunk committed. The sample lives in the chunk context, so one listener serves concurrent steps.
+ */
+public class ChunkMetricsListener implements ChunkListener {
+
+    private static final String SAMPLE = ChunkMetricsListener.class.getName() + ".sample";
+
+    private final MeterRegistry meterRegistry;
+
+    public ChunkMetricsListener(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        context.setAttribute(SAMPLE, Timer.start(meterRegistry));
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        stop(context, "committed");
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        stop(context, "rolled_back");
+    }
+
+    private void stop(ChunkContext context, String outcome) {
+        Timer.Sample sample = (Timer.Sample) context.removeAttribute(SAMPLE);
+        if (sample == null) {
+            return;
+        }
+        StepContext stepContext = context.getStepContext();
+        sample.stop(Timer.builder("batch.chunk")
+                .description("Time from the start of a chunk to the end of its transaction")
+                .tag("job", stepContext.getJobName())
+                .tag("step", stepContext.getStepName())
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.demo.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+public class MetricsConfiguration {
+
+    private final String metricsFile;
+    private final long exportInterval;
+
+    public MetricsConfiguration(@Value("${metrics.file}") String metricsFile, @Value("${metrics.exportInterval}") long exportInterval) {
+        this.metricsFile = metricsFile;
+        this.exportInterval = exportInterval;
+    }
+
+    @Bean
+    public ChunkMetricsListener chunkMetricsListener(MeterRegistry meterRegistry) {
+        return new ChunkMetricsListener(meterRegistry);
+    }
+
+    @Bean
+    public S3Metrics s3Metrics(MeterRegistry meterRegistry) {
+        return new S3Metrics(meterRegistry);
+    }
+
+    @Bean
+    @Lazy(false) // nothing refers to the exporter, lazy initialisation would never create it
+    public PrometheusFileExporter prometheusFileExporter(PrometheusMeterRegistry prometheusMeterRegistry, @Qualifier("taskScheduler") TaskScheduler taskScheduler) {
+        PrometheusFileExporter exporter = new PrometheusFileExporter(prometheusMeterRegistry, Path.of(metricsFile));
+        taskScheduler.scheduleWithFixedDelay(exporter::export, Duration.ofMillis(exportInterval));
+        return exporter;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.demo.metrics;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes the Prometheus text format to a file, periodically and once more when the context closes, since runs exit
+ * before anything could scrape them. The file is replaced atomically so a node_exporter textfile collector never
+ * reads half of it.
+ */
+@Slf4j
+public class PrometheusFileExporter {
+
+    private final PrometheusMeterRegistry prometheusMeterRegistry;
+    private final Path file;
+
+    public PrometheusFileExporter(PrometheusMeterRegistry prometheusMeterRegistry, Path file) {
+        this.prometheusMeterRegistry = prometheusMeterRegistry;
+        this.file = file;
+    }
+
+    public void export() {
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            Files.writeString(temp, prometheusMeterRegistry.scrape(), StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Unable to export metrics to [{}]", file, e);
+        }
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public void exportOnClose() {
+        export();
+        log.info("Exported metrics to [{}]", file);
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.demo.metrics;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.event.ProgressEvent;
+import com.amazonaws.event.ProgressEventType;
+import com.amazonaws.event.ProgressListener;
+import com.amazonaws.event.ProgressListenerChain;
+import com.amazonaws.event.SyncProgressListener;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Request handler for the S3 client that records every request it sends, including the ones made by
+ * {@link com.amazonaws.services.s3.transfer.TransferManager}:
+ * <ul>
+ *     <li>{@code s3.requests} times each operation, so {@code UploadPart} gives the part latency</li>
+ *     <li>{@code s3.request.retries} counts attempts after the first one</li>
+ *     <li>{@code s3.transfer.bytes} counts request and response bytes through a progress listener</li>
+ * </ul>
+ */
+public class S3Metrics extends RequestHandler2 {
+
+    private static final HandlerContextKey<Long> START = new HandlerContextKey<>("metrics.start");
+    private static final HandlerContextKey<AtomicInteger> ATTEMPTS = new HandlerContextKey<>("metrics.attempts");
+
+    private final MeterRegistry meterRegistry;
+    private final ProgressListener bytesListener;
+
+    public S3Metrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Counter uploaded = bytesCounter("upload");
+        Counter downloaded = bytesCounter("download");
+        this.bytesListener = new SyncProgressListener() {
+            @Override
+            public void progressChanged(ProgressEvent progressEvent) {
+                if (progressEvent.getEventType() == ProgressEventType.REQUEST_BYTE_TRANSFER_EVENT) {
+                    uploaded.increment(progressEvent.getBytesTransferred());
+                } else if (progressEvent.getEventType() == ProgressEventType.RESPONSE_BYTE_TRANSFER_EVENT) {
+                    downloaded.increment(progressEvent.getBytesTransferred());
+                }
+            }
+        };
+    }
+
+    @Override
+    public AmazonWebServiceRequest beforeExecution(AmazonWebServiceRequest request) {
+        ProgressListener listener = request.getGeneralProgressListener();
+        // a request sent again, such as a retried part upload, already counts its bytes
+        if (listener == bytesListener || listener instanceof BytesListenerChain) {
+            return request;
+        }
+        // transfers already listen to their own progress, ours is chained alongside
+        request.setGeneralProgressListener(listener == null || listener == ProgressListener.NOOP
+                ? bytesListener
+                : new BytesListenerChain(listener, bytesListener));
+        return request;
+    }
+
+    @Override
+    public void beforeRequest(Request<?> request) {
+        request.addHandlerContext(START, System.nanoTime());
+        request.addHandlerContext(ATTEMPTS, new AtomicInteger());
+    }
+
+    @Override
+    public void beforeAttempt(HandlerBeforeAttemptContext context) {
+        AtomicInteger attempts = context.getRequest().getHandlerContext(ATTEMPTS);
+        if (attempts != null) {
+            attempts.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+        record(request, String.valueOf(response.getHttpResponse().getStatusCode()));
+    }
+
+    @Override
+    public void afterError(Request<?> request, Response<?> response, Exception e) {
+        record(request, response == null ? e.getClass().getSimpleName() : String.valueOf(response.getHttpResponse().getStatusCode()));
+    }
+
+    private void record(Request<?> request, String status) {
+        Long start = request.getHandlerContext(START);
+        if (start == null) {
+            return;
+        }
+        String operation = operation(request);
+        Timer.builder("s3.requests")
+                .description("S3 request latency including retries")
+                .tag("operation", operation)
+                .tag("status", status)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        AtomicInteger attempts = request.getHandlerContext(ATTEMPTS);
+        if (attempts != null && attempts.get() > 1) {
+            Counter.builder("s3.request.retries")
+                    .description("S3 request attempts after the first one")
+                    .tag("operation", operation)
+                    .register(meterRegistry)
+                    .increment(attempts.get() - 1);
+        }
+    }
+
+    private static String operation(Request<?> request) {
+        String name = request.getOriginalRequest().getClass().getSimpleName();
+        return name.endsWith("Request") ? name.substring(0, name.length() - "Request".length()) : name;
+    }
+
+    private Counter bytesCounter(String direction) {
+        return Counter.builder("s3.transfer.bytes")
+                .description("Bytes sent to or received from S3")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .register(meterRegistry);
+    }
+
+    private static class BytesListenerChain extends ProgressListenerChain {
+
+        BytesListenerChain(ProgressListener listener, ProgressListener bytesListener) {
+            super(listener, bytesListener);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.demo.integration;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.batch.core.*;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RunCheckpointsTests {
+
+	private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+	private final JobRepository jobRepository = mock(JobRepository.class);
+	private final RunCheckpoints runCheckpoints = new RunCheckpoints(jdbcTemplate, jobRepository, true);
+	private final JobParameters jobParameters = new JobParametersBuilder()
+			.addLong("owner_id", 7L)
+			.addString("file", "input/7.csv")
+			.addDate("execution_time", new Date(1_600_000_123_456L))
+			.toJobParameters();
+
+	@Test
+	void resumesUnitsWithTheParametersTheyWereLaunchedWith() throws Exception {
+		when(jobRepository.getLastJobExecution("extractJob", jobParameters)).thenReturn(null);
+
+		List<RunUnit> units = resume(record(UnitStage.LAUNCHED));
+
+		assertEquals(1, units.size());
+		assertEquals(jobParameters, units.get(0).getJobParameters());
+		assertEquals(UnitStage.LAUNCHED, units.get(0).getStage());
+	}
+
+	@Test
+	void resumesLaunchedUnitWhoseJobCompletedFromItsUpload() throws Exception {
+		JobExecution jobExecution = new JobExecution(1L, jobParameters);
+		jobExecution.setStatus(BatchStatus.COMPLETED);
+		when(jobRepository.getLastJobExecution("extractJob", jobParameters)).thenReturn(jobExecution);
+
+		assertEquals(UnitStage.JOB_COMPLETED, resume(record(UnitStage.LAUNCHED)).get(0).getStage());
+	}
+
+	@Test
+	void recordsNothingWhenDisabled() {
+		new RunCheckpoints(jdbcTemplate, jobRepository, false).record("extractJob", jobParameters, UnitStage.DONE);
+
+		verifyNoInteractions(jdbcTemplate);
+	}
+
+	@Test
+	void failsStaleExecutionAndItsRunningSteps() {
+		JobExecution jobExecution = new JobExecution(1L, jobParameters);
+		jobExecution.setStatus(BatchStatus.STARTED);
+		jobExecution.setStartTime(new Date());
+		StepExecution running = jobExecution.createStepExecution("extractStep");
+		running.setStatus(BatchStatus.STARTED);
+		StepExecution completed = jobExecution.createStepExecution("uploadStep");
+		completed.setStatus(BatchStatus.COMPLETED);
+		when(jobRepository.getLastJobExecution("extractJob", jobParameters)).thenReturn(jobExecution);
+
+		runCheckpoints.failStaleExecution("extractJob", jobParameters);
+
+		assertEquals(BatchStatus.FAILED, jobExecution.getStatus());
+		assertEquals(BatchStatus.FAILED, running.getStatus());
+		assertEquals(BatchStatus.COMPLETED, completed.getStatus());
+		verify(jobRepository).update(running);
+		verify(jobRepository, never()).update(completed);
+		verify(jobRepository).update(jobExecution);
+	}
+
+	@Test
+	void leavesFinishedExecutionAlone() {
+		JobExecution jobExecution = new JobExecution(1L, jobParameters);
+		jobExecution.setStatus(BatchStatus.FAILED);
+		when(jobRepository.getLastJobExecution("extractJob", jobParameters)).thenReturn(jobExecution);
+
+		runCheckpoints.failStaleExecution("extractJob", jobParameters);
+
+		verify(jobRepository, never()).update(any(JobExecution.class));
+	}
+
+	private String[] record(UnitStage stage) {
+		runCheckpoints.record("extractJob", jobParameters, stage);
+		ArgumentCaptor<Object> values = ArgumentCaptor.forClass(Object.class);
+		verify(jdbcTemplate).update(anyString(), values.capture(), values.capture(), values.capture(), values.capture());
+		assertEquals("extractJob", values.getAllValues().get(0));
+		return new String[] { (String) values.getAllValues().get(2), (String) values.getAllValues().get(3) };
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<RunUnit> resume(String[] row) throws Exception {
+		ResultSet rs = mock(ResultSet.class);
+		when(rs.getString(1)).thenReturn(row[0]);
+		when(rs.getString(2)).thenReturn(row[1]);
+		when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq("extractJob"))).thenAnswer(invocation -> {
+			List<RunUnit> units = new ArrayList<>();
+			units.add(invocation.<RowMapper<RunUnit>>getArgument(1).mapRow(rs, 0));
+			return units;
+		});
+		return runCheckpoints.unfinished("extractJob");
+	}
+
+}
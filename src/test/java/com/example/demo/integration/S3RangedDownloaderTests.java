@@ -0,0 +1,93 @@
+package com.example.demo.integration;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class S3RangedDownloaderTests {
+
+	@TempDir
+	File directory;
+
+	private final AmazonS3 amazonS3 = mock(AmazonS3.class);
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+	private final S3RangedDownloader downloader = new S3RangedDownloader(amazonS3, executor, 10, 4);
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void downloadsRangesWithListedETag() throws Exception {
+		byte[] content = "0123456789ab".getBytes(StandardCharsets.UTF_8);
+		when(amazonS3.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> range(content, invocation.getArgument(0)));
+		File file = new File(directory, "a.csv");
+
+		downloader.download("output", "a.csv", content.length, "e1", file);
+
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+		ArgumentCaptor<GetObjectRequest> requests = ArgumentCaptor.forClass(GetObjectRequest.class);
+		verify(amazonS3, times(3)).getObject(requests.capture());
+		requests.getAllValues().forEach(request -> assertEquals(List.of("e1"), request.getMatchingETagConstraints()));
+	}
+
+	@Test
+	void failsWhenObjectChangedBetweenRanges() {
+		byte[] content = "0123456789ab".getBytes(StandardCharsets.UTF_8);
+		// S3 answers a range whose If-Match no longer holds with 412, which the client returns as null
+		when(amazonS3.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+			GetObjectRequest request = invocation.getArgument(0);
+			return request.getRange()[0] == 4 ? null : range(content, request);
+		});
+
+		IOException e = assertThrows(IOException.class, () -> downloader.download("output", "a.csv", content.length, "e1", new File(directory, "a.csv")));
+
+		assertInstanceOf(IllegalStateException.class, e.getCause());
+	}
+
+	@Test
+	void failsWhenSmallObjectChanged() {
+		when(amazonS3.getObject(any(GetObjectRequest.class), any(File.class))).thenReturn(null);
+
+		assertThrows(IllegalStateException.class, () -> downloader.download("output", "a.csv", 5, "e1", new File(directory, "a.csv")));
+
+		ArgumentCaptor<GetObjectRequest> request = ArgumentCaptor.forClass(GetObjectRequest.class);
+		verify(amazonS3).getObject(request.capture(), any(File.class));
+		assertEquals(List.of("e1"), request.getValue().getMatchingETagConstraints());
+	}
+
+	@Test
+	void keepsLocalFilesInsideTheDirectory() {
+		assertEquals(new File(directory, "2021/a.csv").toPath(), S3RangedDownloader.localFile(directory, "2021/./x/../a.csv").toPath());
+
+		for (String key : new String[] { "../a.csv", "2021/../../a.csv", "/etc/a.csv", "", "2021/.." }) {
+			assertThrows(IllegalArgumentException.class, () -> S3RangedDownloader.localFile(directory, key), key);
+		}
+	}
+
+	private static S3Object range(byte[] content, GetObjectRequest request) {
+		long[] range = request.getRange();
+		S3Object object = new S3Object();
+		object.setObjectContent(new ByteArrayInputStream(content, (int) range[0], (int) (range[1] - range[0] + 1)));
+		return object;
+	}
+
+}
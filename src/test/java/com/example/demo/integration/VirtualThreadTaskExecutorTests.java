@@ -0,0 +1,26 @@
+package com.example.demo.integration;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+class VirtualThreadTaskExecutorTests {
+
+	@Test
+	void boundsPlatformThreadsWithoutVirtualThreads() {
+		assumeFalse(Arrays.stream(Thread.class.getMethods()).anyMatch(method -> method.getName().equals("ofVirtual")));
+		ExecutorService executor = VirtualThreadTaskExecutor.newThreadPerTaskExecutor("s3-transfer-", 3);
+		try {
+			ThreadPoolExecutor pool = assertInstanceOf(ThreadPoolExecutor.class, executor);
+			assertEquals(3, pool.getMaximumPoolSize());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package com.example.demo.integration;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class WorkUnitsTests {
+
+	private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+	private final WorkUnits workUnits = new WorkUnits(jdbcTemplate, 60, 3);
+
+	@Test
+	void claimsOnlyWhileCapacityIsFree() {
+		available(new WorkUnit(1, "a", 1), new WorkUnit(2, "b", 1), new WorkUnit(3, "c", 1));
+
+		assertEquals(1, workUnits.claim("extractJob", 2).getId());
+		assertEquals(2, workUnits.claim("extractJob", 2).getId());
+		assertNull(workUnits.claim("extractJob", 2));
+		verify(jdbcTemplate, times(2)).query(anyString(), any(RowMapper.class), any(), eq(60), eq("extractJob"), eq(3));
+
+		when(jdbcTemplate.update(anyString(), eq("COMPLETED"), eq(1L), anyString())).thenReturn(1);
+		workUnits.complete(1, true);
+
+		assertEquals(3, workUnits.claim("extractJob", 2).getId());
+	}
+
+	@Test
+	void claimsNothingWhenNoUnitIsClaimable() {
+		available();
+
+		assertNull(workUnits.claim("extractJob", 1));
+		assertTrue(drained());
+	}
+
+	@Test
+	void claimsExpiredLeasesOfOtherWorkersUpToMaxAttempts() {
+		available(new WorkUnit(1, "a", 2));
+
+		WorkUnit unit = workUnits.claim("extractJob", 1);
+
+		assertEquals(2, unit.getAttempts());
+		verify(jdbcTemplate).query(argThat((String sql) -> sql.contains("status = 'CLAIMED' and lease_expires_at < now()")
+				&& sql.contains("attempts < ?") && sql.contains("for update skip locked")), any(RowMapper.class), any(), eq(60), eq("extractJob"), eq(3));
+	}
+
+	@Test
+	void heartbeatRenewsLeasesOfThisWorker() {
+		available(new WorkUnit(1, "a", 1));
+		String worker = workerOf(workUnits.claim("extractJob", 1));
+
+		workUnits.heartbeat();
+
+		verify(jdbcTemplate).update(argThat((String sql) -> sql.startsWith("update work_unit set lease_expires_at")), eq(60), eq(worker));
+	}
+
+	@Test
+	void workersNeverShareAnIdOrRenewEachOthersLeases() {
+		available(new WorkUnit(1, "a", 1));
+		String worker = workerOf(workUnits.claim("extractJob", 1));
+		WorkUnits replacement = new WorkUnits(jdbcTemplate, 60, 3);
+
+		replacement.heartbeat();
+		replacement.complete(1, true);
+
+		ArgumentCaptor<Object> workers = ArgumentCaptor.forClass(Object.class);
+		verify(jdbcTemplate).update(argThat((String sql) -> sql.startsWith("update work_unit set lease_expires_at")), eq(60), workers.capture());
+		verify(jdbcTemplate).update(anyString(), eq("COMPLETED"), eq(1L), workers.capture());
+		assertNotEquals(worker, workers.getAllValues().get(0));
+		assertEquals(workers.getAllValues().get(0), workers.getAllValues().get(1));
+	}
+
+	@Test
+	void completingALostLeaseStillFreesCapacity() {
+		available(new WorkUnit(1, "a", 1));
+		workUnits.claim("extractJob", 1);
+		when(jdbcTemplate.update(anyString(), eq("FAILED"), eq(1L), anyString())).thenReturn(0);
+
+		workUnits.complete(1, false);
+
+		assertTrue(drained());
+	}
+
+	@Test
+	void isNotDrainedWhileHoldingUnits() {
+		available(new WorkUnit(1, "a", 1));
+		workUnits.claim("extractJob", 1);
+
+		assertFalse(drained());
+	}
+
+	@SuppressWarnings("unchecked")
+	private void available(WorkUnit... units) {
+		List<WorkUnit> remaining = new ArrayList<>(List.of(units));
+		when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(), anyInt(), anyString(), anyInt()))
+				.thenAnswer(invocation -> remaining.isEmpty() ? List.of() : List.of(remaining.remove(0)));
+		when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), anyString(), anyInt())).thenReturn(0L);
+	}
+
+	private boolean drained() {
+		return workUnits.isDrained("extractJob");
+	}
+
+	@SuppressWarnings("unchecked")
+	private String workerOf(WorkUnit unit) {
+		assertNotNull(unit);
+		ArgumentCaptor<Object> worker = ArgumentCaptor.forClass(Object.class);
+		verify(jdbcTemplate).query(anyString(), any(RowMapper.class), worker.capture(), anyInt(), anyString(), anyInt());
+		return (String) worker.getValue();
+	}
+
+}
@@ -0,0 +1,124 @@
+package com.example.demo.integration.extract;
+
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.example.demo.integration.CompressionCodec;
+import com.example.demo.integration.ExchangeFormat;
+import com.example.demo.integration.RunUnit;
+import com.example.demo.integration.UnitStage;
+import com.example.demo.integration.WorkUnits;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.integration.aggregator.AggregatingMessageHandler;
+import org.springframework.integration.aggregator.DefaultAggregatingMessageGroupProcessor;
+import org.springframework.integration.channel.FixedSubscriberChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.annotation.Transformer;
+import org.springframework.integration.handler.AbstractMessageHandler;
+import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
+import org.springframework.integration.handler.ServiceActivatingHandler;
+import org.springframework.integration.splitter.MethodInvokingSplitter;
+import org.springframework.integration.transformer.MessageTransformingHandler;
+import org.springframework.integration.transformer.MethodInvokingTransformer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ExtractionIntegrationConfigTests {
+
+	@TempDir
+	File directory;
+
+	private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+	private final StaticApplicationContext context = new StaticApplicationContext();
+
+	@Test
+	void resumedUnitsReachTheAggregator() throws Exception {
+		ExtractionIntegrationConfig config = config(false, true);
+		List<RunUnit> units = List.of(unit("1.csv"), unit("2.csv"));
+
+		QueueChannel split = new QueueChannel();
+		MethodInvokingSplitter splitter = new MethodInvokingSplitter(config, "resumeUnitSplitter");
+		splitter.setOutputChannel(split);
+		initialize(splitter);
+		splitter.handleMessage(new GenericMessage<>(units));
+
+		QueueChannel aggregated = new QueueChannel();
+		AggregatingMessageHandler aggregator = new AggregatingMessageHandler(new DefaultAggregatingMessageGroupProcessor());
+		aggregator.setOutputChannel(aggregated);
+		initialize(aggregator);
+		AbstractReplyProducingMessageHandler deleteLocalFile = endpoint(config, "deleteLocalFile");
+		deleteLocalFile.setOutputChannel(new FixedSubscriberChannel(aggregator));
+		initialize(deleteLocalFile);
+		QueueChannel resumed = new QueueChannel();
+		AbstractReplyProducingMessageHandler resumeUploaded = endpoint(config, "resumeUploaded");
+		resumeUploaded.setOutputChannel(resumed);
+		initialize(resumeUploaded);
+
+		for (int i = 0; i < units.size(); i++) {
+			resumeUploaded.handleMessage(split.receive(0));
+			deleteLocalFile.handleMessage(resumed.receive(0));
+		}
+
+		Message<?> released = aggregated.receive(0);
+		assertNotNull(released);
+		assertEquals(List.of(true, true), released.getPayload());
+		assertFalse(new File(directory, "1.csv").exists());
+		verify(jdbcTemplate, times(2)).update(anyString(), eq("extractJob"), anyString(), anyString(), eq(UnitStage.DONE.name()));
+	}
+
+	@Test
+	void checkpointsOnlyWhenEnabledOrResuming() {
+		config(false, false).extractUploaded(new File(directory, "1.csv"), unit("1.csv").getJobParameters());
+		verifyNoInteractions(jdbcTemplate);
+
+		config(true, false).extractUploaded(new File(directory, "1.csv"), unit("1.csv").getJobParameters());
+		verify(jdbcTemplate).update(anyString(), eq("extractJob"), anyString(), anyString(), eq(UnitStage.UPLOADED.name()));
+	}
+
+	/**
+	 * The handler the integration annotations build for a method, a transformer replaces the headers of a message it
+	 * returns where a service activator adds the request's.
+	 */
+	private static AbstractReplyProducingMessageHandler endpoint(Object config, String method) {
+		boolean transformer = Arrays.stream(config.getClass().getMethods())
+				.anyMatch(m -> m.getName().equals(method) && m.isAnnotationPresent(Transformer.class));
+		return transformer ? new MessageTransformingHandler(new MethodInvokingTransformer(config, method)) : new ServiceActivatingHandler(config, method);
+	}
+
+	private void initialize(AbstractMessageHandler handler) {
+		handler.setBeanFactory(context);
+		handler.afterPropertiesSet();
+	}
+
+	private ExtractionIntegrationConfig config(boolean checkpoints, boolean resume) {
+		Job extractJob = mock(Job.class);
+		when(extractJob.getName()).thenReturn("extractJob");
+		return new ExtractionIntegrationConfig(extractJob, mock(JobLauncher.class), mock(TransferManager.class), "input", false,
+				CompressionCodec.NONE, ExchangeFormat.CSV, 1, 0, false, new SimpleMeterRegistry(), jdbcTemplate, "owner", 100, 0,
+				mock(JobRepository.class), checkpoints, resume, mock(WorkUnits.class), "standalone", 1000);
+	}
+
+	private RunUnit unit(String name) {
+		File file = new File(directory, name);
+		assertDoesNotThrow(file::createNewFile);
+		return new RunUnit("extractJob", new JobParametersBuilder()
+				.addLong("owner_id", 1L)
+				.addString("file", file.getPath())
+				.toJobParameters(), UnitStage.UPLOADED);
+	}
+
+}
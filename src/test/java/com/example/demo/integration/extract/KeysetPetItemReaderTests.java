@@ -0,0 +1,82 @@
+package com.example.demo.integration.extract;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class KeysetPetItemReaderTests {
+
+	private static final Comparator<PetKey> KEY_ORDER = Comparator.comparingLong(PetKey::getOwnerId).thenComparingLong(PetKey::getId);
+
+	private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+	private final List<PetKey> pets = List.of(new PetKey(1, 1), new PetKey(5, 1), new PetKey(2, 2), new PetKey(3, 2),
+			new PetKey(4, 3), new PetKey(6, 9));
+
+	@BeforeEach
+	void setUp() {
+		// the page query over the pets above, compared by (owner_id, id) as the database does
+		when(jdbcTemplate.query(anyString(), any(RowMapper.class), anyLong(), anyLong(), anyLong(), anyLong(), anyInt())).thenAnswer(invocation -> {
+			long minOwnerId = invocation.getArgument(2);
+			long maxOwnerId = invocation.getArgument(3);
+			PetKey after = new PetKey(invocation.getArgument(5), invocation.getArgument(4));
+			return pets.stream()
+					.filter(pet -> pet.getOwnerId() >= minOwnerId && pet.getOwnerId() <= maxOwnerId && KEY_ORDER.compare(pet, after) > 0)
+					.sorted(KEY_ORDER)
+					.limit(invocation.<Integer>getArgument(6))
+					.collect(Collectors.toList());
+		});
+	}
+
+	@Test
+	void readsOwnerRangeInKeyOrderAPageAtATime() {
+		KeysetPetItemReader reader = reader();
+		reader.open(new ExecutionContext());
+
+		assertEquals(List.of(new PetKey(1, 1), new PetKey(5, 1), new PetKey(2, 2), new PetKey(3, 2), new PetKey(4, 3)), readAll(reader));
+		verify(jdbcTemplate, times(3)).query(anyString(), any(RowMapper.class), anyLong(), anyLong(), anyLong(), anyLong(), anyInt());
+	}
+
+	@Test
+	void restartContinuesAfterLastCommittedKey() {
+		ExecutionContext executionContext = new ExecutionContext();
+		KeysetPetItemReader reader = reader();
+		reader.open(executionContext);
+		reader.read();
+		reader.read();
+		reader.read();
+		reader.update(executionContext);
+		reader.read();
+
+		KeysetPetItemReader restarted = reader();
+		restarted.open(executionContext);
+
+		assertEquals(List.of(new PetKey(3, 2), new PetKey(4, 3)), readAll(restarted));
+	}
+
+	private KeysetPetItemReader reader() {
+		KeysetPetItemReader reader = new KeysetPetItemReader(jdbcTemplate, 1, 3, 2);
+		reader.setName("keysetPetReader");
+		return reader;
+	}
+
+	private static List<PetKey> readAll(KeysetPetItemReader reader) {
+		List<PetKey> read = new ArrayList<>();
+		PetKey pet;
+		while ((pet = reader.read()) != null) {
+			read.add(pet);
+		}
+		return read;
+	}
+
+}
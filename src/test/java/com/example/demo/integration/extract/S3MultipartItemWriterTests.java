@@ -0,0 +1,181 @@
+package com.example.demo.integration.extract;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.*;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.listener.ExecutionContextPromotionListener;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.MapJobRepositoryFactoryBean;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class S3MultipartItemWriterTests {
+
+	private static final int PART_SIZE = 20;
+
+	private final AmazonS3 amazonS3 = mock(AmazonS3.class);
+	private final Map<Integer, String> parts = new TreeMap<>();
+	private String completed;
+
+	@BeforeEach
+	void setUp() {
+		when(amazonS3.initiateMultipartUpload(any())).thenReturn(initiated());
+		when(amazonS3.uploadPart(any())).thenAnswer(invocation -> {
+			UploadPartRequest request = invocation.getArgument(0);
+			parts.put(request.getPartNumber(), new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+			UploadPartResult result = new UploadPartResult();
+			result.setPartNumber(request.getPartNumber());
+			result.setETag("etag" + request.getPartNumber());
+			return result;
+		});
+		when(amazonS3.completeMultipartUpload(any())).thenAnswer(invocation -> {
+			CompleteMultipartUploadRequest request = invocation.getArgument(0);
+			completed = request.getPartETags().stream().map(part -> parts.get(part.getPartNumber())).collect(Collectors.joining());
+			return new CompleteMultipartUploadResult();
+		});
+	}
+
+	@Test
+	void keepsOnlyUploadStateInContext() throws Exception {
+		S3MultipartItemWriter<String> writer = writer();
+		ExecutionContext executionContext = new ExecutionContext();
+		writer.open(executionContext);
+
+		writer.write(List.of("line 1", "line 2"));
+		writer.update(executionContext);
+		assertEquals(0, executionContext.getInt("petReader.read.count"));
+		assertEquals("", executionContext.getString("petS3Writer.upload.parts"));
+
+		writer.write(List.of("line 3"));
+		writer.update(executionContext);
+
+		assertEquals(Map.of(1, "id\nline 1\nline 2\nline 3\n"), parts);
+		assertEquals(Map.of("petS3Writer.upload.id", "upload", "petS3Writer.upload.parts", "1:etag1", "petS3Writer.upload.items", 3,
+				"petReader.read.count", 3), executionContext.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+	}
+
+	@Test
+	void resumesUploadAndWritesHeaderAgainUntilFirstPartIsSent() throws Exception {
+		ExecutionContext executionContext = new ExecutionContext();
+		executionContext.putString("petS3Writer.upload.id", "upload");
+		executionContext.putString("petS3Writer.upload.parts", "");
+		executionContext.putInt("petS3Writer.upload.items", 0);
+		S3MultipartItemWriter<String> writer = writer();
+
+		writer.open(executionContext);
+		writer.write(List.of("line 1", "line 2", "line 3"));
+
+		verify(amazonS3, never()).initiateMultipartUpload(any());
+		assertEquals(Map.of(1, "id\nline 1\nline 2\nline 3\n"), parts);
+	}
+
+	@Test
+	void restartReadsItemsNotInAPartAgain() throws Exception {
+		JobRepository jobRepository = new MapJobRepositoryFactoryBean().getObject();
+		FailingReader reader = new FailingReader(12, 7);
+		Job job = job(jobRepository, reader);
+		SimpleJobLauncher jobLauncher = new SimpleJobLauncher();
+		jobLauncher.setJobRepository(jobRepository);
+		jobLauncher.afterPropertiesSet();
+		JobParameters jobParameters = new JobParameters();
+
+		assertEquals(BatchStatus.FAILED, jobLauncher.run(job, jobParameters).getStatus());
+		assertNull(completed);
+		reader.failAt = 0;
+		assertEquals(BatchStatus.COMPLETED, jobLauncher.run(job, jobParameters).getStatus());
+
+		assertEquals("id\n" + IntStream.rangeClosed(1, 12).mapToObj(i -> "line " + i + "\n").collect(Collectors.joining()), completed);
+	}
+
+	@Test
+	void failsStepWhenLastPartCannotBeSent() throws Exception {
+		S3MultipartItemWriter<String> writer = writer();
+		writer.open(new ExecutionContext());
+		writer.write(List.of("line 1"));
+		doThrow(new AmazonS3Exception("Slow Down")).when(amazonS3).uploadPart(any());
+		StepExecution stepExecution = new StepExecution("extract", new JobExecution(1L));
+		stepExecution.setStatus(BatchStatus.COMPLETED);
+
+		assertEquals(ExitStatus.FAILED, writer.afterStep(stepExecution));
+		assertEquals(BatchStatus.FAILED, stepExecution.getStatus());
+	}
+
+	private Job job(JobRepository jobRepository, FailingReader reader) {
+		ResourcelessTransactionManager transactionManager = new ResourcelessTransactionManager();
+		ExecutionContextPromotionListener promotionListener = new ExecutionContextPromotionListener();
+		promotionListener.setKeys(CompleteMultipartUploadTasklet.contextKeys("petS3Writer"));
+		StepBuilderFactory steps = new StepBuilderFactory(jobRepository, transactionManager);
+		Step extract = steps.get("extract")
+				.listener(promotionListener)
+				.<String, String> chunk(2)
+				.reader(reader)
+				.writer(writer())
+				.build();
+		Step completeUpload = steps.get("completeUpload")
+				.tasklet(new CompleteMultipartUploadTasklet(amazonS3, "input", "1.csv", "petS3Writer"))
+				.build();
+		return new JobBuilderFactory(jobRepository).get("extractJob").start(extract).next(completeUpload).build();
+	}
+
+	private S3MultipartItemWriter<String> writer() {
+		S3MultipartItemWriter<String> writer = new S3MultipartItemWriter<>(amazonS3, "input", "1.csv", PART_SIZE, item -> item);
+		writer.setName("petS3Writer");
+		writer.setReadCountKey("petReader.read.count");
+		writer.setHeader("id");
+		return writer;
+	}
+
+	private static InitiateMultipartUploadResult initiated() {
+		InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+		result.setUploadId("upload");
+		return result;
+	}
+
+	private static class FailingReader extends AbstractItemCountingItemStreamItemReader<String> {
+
+		private final int items;
+		private int failAt;
+		private int next;
+
+		FailingReader(int items, int failAt) {
+			this.items = items;
+			this.failAt = failAt;
+			setName("petReader");
+		}
+
+		@Override
+		protected String doRead() {
+			if (++next == failAt) {
+				throw new IllegalStateException("Connection lost");
+			}
+			return next <= items ? "line " + next : null;
+		}
+
+		@Override
+		protected void doOpen() {
+			next = 0;
+		}
+
+		@Override
+		protected void doClose() {
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.example.demo.integration.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ExistingPetItemProcessorTests {
+
+	private final NamedParameterJdbcTemplate jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+	private final ExistingPetItemProcessor processor = new ExistingPetItemProcessor(jdbcTemplate);
+
+	@Test
+	void filtersPetsThatDoNotExistWithOneQueryPerChunk() {
+		when(jdbcTemplate.queryForList(anyString(), eq(Map.of("ids", Set.of(1L, 2L, 3L))), eq(Long.class))).thenReturn(List.of(1L, 3L));
+		PetDto first = read(1L);
+		PetDto missing = read(2L);
+		PetDto last = read(3L);
+
+		assertSame(first, processor.process(first));
+		assertNull(processor.process(missing));
+		assertSame(last, processor.process(last));
+		verify(jdbcTemplate, times(1)).queryForList(anyString(), anyMap(), eq(Long.class));
+	}
+
+	@Test
+	void looksUpEachChunkAgain() {
+		when(jdbcTemplate.queryForList(anyString(), eq(Map.of("ids", Set.of(1L))), eq(Long.class))).thenReturn(List.of(1L));
+		when(jdbcTemplate.queryForList(anyString(), eq(Map.of("ids", Set.of(2L))), eq(Long.class))).thenReturn(List.of());
+		processor.process(read(1L));
+
+		assertNull(processor.process(read(2L)));
+	}
+
+	private PetDto read(long id) {
+		PetDto pet = new PetDto();
+		pet.setId(id);
+		pet.setName("name" + id);
+		processor.afterRead(pet);
+		return pet;
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.example.demo.integration.ingest;
+
+import com.example.demo.integration.QuotedRecordSeparatorPolicy;
+import com.example.demo.integration.extract.PetLineAggregator;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.file.FlatFileParseException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PetDtoLineMapperTests {
+
+	private final PetDtoLineMapper lineMapper = new PetDtoLineMapper();
+
+	@Test
+	void mapsPlainLine() {
+		PetDto pet = lineMapper.mapLine("4,2,pete", 1);
+
+		assertEquals(4L, pet.getId());
+		assertEquals(2L, pet.getOwnerId());
+		assertEquals("pete", pet.getName());
+	}
+
+	@Test
+	void mapsLongLimits() {
+		PetDto pet = lineMapper.mapLine("9223372036854775807,-9223372036854775808,max", 1);
+
+		assertEquals(Long.MAX_VALUE, pet.getId());
+		assertEquals(Long.MIN_VALUE, pet.getOwnerId());
+		assertEquals(-7L, lineMapper.mapLine("-7,,x", 1).getId());
+		assertNull(lineMapper.mapLine("-7,,x", 1).getOwnerId());
+	}
+
+	@Test
+	void rejectsNumbersOutOfRange() {
+		assertThrows(FlatFileParseException.class, () -> lineMapper.mapLine("9223372036854775808,1,spot", 1));
+		assertThrows(FlatFileParseException.class, () -> lineMapper.mapLine("1,-9223372036854775809,spot", 1));
+		assertThrows(FlatFileParseException.class, () -> lineMapper.mapLine("99999999999999999999,1,spot", 1));
+		assertThrows(FlatFileParseException.class, () -> lineMapper.mapLine("-,1,spot", 1));
+	}
+
+	@Test
+	void roundTripsNamesThatNeedQuoting() {
+		for (String name : new String[] { "spot, the dog", "\"boo\" boo", "two\nlines", "" }) {
+			String line = PetLineAggregator.format(1, 3, name);
+
+			assertEquals(name, lineMapper.mapLine(line, 1).getName());
+		}
+	}
+
+	@Test
+	void writesNullNameAsEmptyField() {
+		assertEquals("6,3,", PetLineAggregator.format(6, 3, null));
+	}
+
+	@Test
+	void rejectsMalformedLines() {
+		assertThrows(FlatFileParseException.class, () -> lineMapper.mapLine("1,2", 1));
+		assertThrows(FlatFileParseException.class, () -> lineMapper.mapLine("x,2,spot", 1));
+		assertThrows(FlatFileParseException.class, () -> lineMapper.mapLine("1,2,spot,extra", 1));
+		assertThrows(FlatFileParseException.class, () -> lineMapper.mapLine("1,2,\"spot", 1));
+	}
+
+	@Test
+	void continuesRecordsWithOpenQuotes() {
+		QuotedRecordSeparatorPolicy policy = new QuotedRecordSeparatorPolicy();
+
+		assertFalse(policy.isEndOfRecord("1,3,\"two"));
+		assertTrue(policy.isEndOfRecord(policy.preProcess("1,3,\"two") + "lines\""));
+		assertTrue(policy.isEndOfRecord("1,3,back\\"));
+	}
+
+}
@@ -0,0 +1,99 @@
+package com.example.demo.integration.ingest;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.example.demo.integration.S3RangedDownloader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class S3DownloadCacheTests {
+
+	@TempDir
+	File directory;
+
+	private final S3RangedDownloader downloader = mock(S3RangedDownloader.class);
+	private S3DownloadCache cache;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		cache = new S3DownloadCache(downloader, directory, 10, 4);
+		doAnswer(invocation -> {
+			Files.write(invocation.<File>getArgument(4).toPath(), new byte[(int) invocation.<Long>getArgument(2).longValue()]);
+			return null;
+		}).when(downloader).download(anyString(), anyString(), anyLong(), anyString(), any(File.class));
+	}
+
+	@Test
+	void deletesFileAndFreesBudgetOnceItsJobCommits() throws Exception {
+		File file = cache.fetch(object("a.csv", 10, "e1"));
+		assertTrue(file.exists());
+
+		cache.release(file, true);
+
+		assertFalse(file.exists());
+		assertFalse(new File(file.getPath() + ".etag").exists());
+		assertTrue(cache.fetch(object("b.csv", 10, "e2")).exists());
+	}
+
+	@Test
+	void keepsFileOfUncommittedJobForItsRestart() throws Exception {
+		File file = cache.fetch(object("a.csv", 10, "e1"));
+
+		cache.release(file, false);
+
+		assertTrue(file.exists());
+		assertEquals(file, cache.fetch(object("a.csv", 10, "e1")));
+		verify(downloader, times(1)).download(anyString(), eq("a.csv"), anyLong(), anyString(), any(File.class));
+	}
+
+	@Test
+	void downloadsAgainWhenObjectChanged() throws Exception {
+		cache.release(cache.fetch(object("a.csv", 10, "e1")), false);
+
+		cache.fetch(object("a.csv", 10, "e2"));
+
+		verify(downloader).download("output", "a.csv", 10, "e2", new File(directory, "a.csv.part"));
+	}
+
+	@Test
+	void waitsUntilObjectFitsInBudget() throws Exception {
+		File held = cache.fetch(object("a.csv", 6, "e1"));
+		CompletableFuture<File> waiting = CompletableFuture.supplyAsync(() -> {
+			try {
+				return cache.fetch(object("b.csv", 6, "e2"));
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		assertThrows(TimeoutException.class, () -> waiting.get(200, TimeUnit.MILLISECONDS));
+
+		cache.release(held, true);
+
+		assertTrue(waiting.get(5, TimeUnit.SECONDS).exists());
+	}
+
+	@Test
+	void letsObjectLargerThanBudgetThroughWhenNothingIsHeld() throws Exception {
+		assertTrue(cache.fetch(object("big.csv", 25, "e1")).exists());
+	}
+
+	private static S3ObjectSummary object(String key, long size, String eTag) {
+		S3ObjectSummary object = new S3ObjectSummary();
+		object.setBucketName("output");
+		object.setKey(key);
+		object.setSize(size);
+		object.setETag(eTag);
+		return object;
+	}
+
+}
@@ -0,0 +1,146 @@
+package com.example.demo.integration.ingest;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class S3EventQueueTests {
+
+	private final AmazonSQS amazonSQS = mock(AmazonSQS.class);
+	private final AmazonS3 amazonS3 = mock(AmazonS3.class);
+	private final S3EventQueue queue = new S3EventQueue(amazonSQS, amazonS3, "queue", "output", 10, 0, 300, 0);
+
+	@BeforeEach
+	void start() {
+		queue.start();
+	}
+
+	@Test
+	void deletesMessageOnceAllItsObjectsAreDone() {
+		exists("a.csv", "e1");
+		exists("b.csv", "e2");
+		receive(message("m1", "h1", created("a.csv", "e1"), created("b.csv", "e2")));
+
+		assertEquals("a.csv", queue.next().getKey());
+		assertEquals("b.csv", queue.next().getKey());
+		queue.done("a.csv", true);
+		verify(amazonSQS, never()).deleteMessage(anyString(), anyString());
+
+		queue.done("b.csv", true);
+		verify(amazonSQS).deleteMessage("queue", "h1");
+	}
+
+	@Test
+	void leavesMessageWithFailedObjectToBecomeVisibleAgain() {
+		exists("a.csv", "e1");
+		receive(message("m1", "h1", created("a.csv", "e1")));
+
+		queue.next();
+		queue.done("a.csv", false);
+
+		verify(amazonSQS, never()).deleteMessage(anyString(), anyString());
+		verify(amazonSQS, never()).changeMessageVisibility(anyString(), anyString(), anyInt());
+	}
+
+	@Test
+	void deletesRedeliveredMessageWithLatestReceiptHandle() {
+		exists("a.csv", "e1");
+		receive(message("m1", "h1", created("a.csv", "e1")));
+		queue.next();
+		receive(message("m1", "h2", created("a.csv", "e1")));
+
+		assertNull(queue.next());
+		queue.done("a.csv", true);
+
+		verify(amazonSQS).deleteMessage("queue", "h2");
+		verify(amazonS3, times(1)).getObjectMetadata("output", "a.csv");
+	}
+
+	@Test
+	void postponesEventForObjectInFlight() {
+		exists("a.csv", "e1");
+		receive(message("m1", "h1", created("a.csv", "e1")));
+		queue.next();
+		receive(message("m2", "h2", created("a.csv", "e1")));
+
+		assertNull(queue.next());
+		queue.done("a.csv", true);
+
+		verify(amazonSQS).deleteMessage("queue", "h1");
+		verify(amazonSQS, never()).deleteMessage("queue", "h2");
+	}
+
+	@Test
+	void dropsEventForIngestedOrReplacedObject() {
+		AmazonS3Exception notFound = new AmazonS3Exception("Not Found");
+		notFound.setStatusCode(404);
+		when(amazonS3.getObjectMetadata("output", "gone.csv")).thenThrow(notFound);
+		exists("replaced.csv", "e2");
+		receive(message("m1", "h1", created("gone.csv", "e1")), message("m2", "h2", created("replaced.csv", "e1")));
+
+		assertNull(queue.next());
+
+		verify(amazonSQS).deleteMessage("queue", "h1");
+		verify(amazonSQS).deleteMessage("queue", "h2");
+	}
+
+	@Test
+	void skipsUnparsableMessage() {
+		exists("a.csv", "e1");
+		receive(new Message().withMessageId("bad").withReceiptHandle("h0").withBody("not json"), message("m1", "h1", created("a.csv", "e1")));
+
+		assertEquals("a.csv", queue.next().getKey());
+
+		verify(amazonSQS, never()).deleteMessage("queue", "h0");
+	}
+
+	@Test
+	void releasesMessagesNotDispatchedWhenStopped() {
+		exists("a.csv", "e1");
+		exists("b.csv", "e2");
+		receive(message("m1", "h1", created("a.csv", "e1")), message("m2", "h2", created("b.csv", "e2")));
+		S3ObjectSummary dispatched = queue.next();
+
+		queue.stop();
+
+		verify(amazonSQS).changeMessageVisibility("queue", "h2", 0);
+		verify(amazonSQS, never()).changeMessageVisibility("queue", "h1", 0);
+		assertNull(queue.next());
+		queue.done(dispatched.getKey(), true);
+		verify(amazonSQS).deleteMessage("queue", "h1");
+	}
+
+	private void exists(String key, String eTag) {
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setHeader("ETag", "\"" + eTag + "\"");
+		metadata.setContentLength(10);
+		when(amazonS3.getObjectMetadata("output", key)).thenReturn(metadata);
+	}
+
+	private void receive(Message... messages) {
+		when(amazonSQS.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(new ReceiveMessageResult().withMessages(List.of(messages)));
+	}
+
+	private static Message message(String messageId, String receiptHandle, String... records) {
+		return new Message().withMessageId(messageId).withReceiptHandle(receiptHandle).withBody("{\"Records\":[" + String.join(",", records) + "]}");
+	}
+
+	private static String created(String key, String eTag) {
+		return "{\"eventName\":\"ObjectCreated:Put\",\"s3\":{\"bucket\":{\"name\":\"output\"},\"object\":{\"key\":\"" + key
+				+ "\",\"size\":10,\"eTag\":\"" + eTag + "\"}}}";
+	}
+
+}
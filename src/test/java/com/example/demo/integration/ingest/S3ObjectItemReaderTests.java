@@ -0,0 +1,149 @@
+package com.example.demo.integration.ingest;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.example.demo.integration.CompressionCodec;
+import com.example.demo.integration.QuotedRecordSeparatorPolicy;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class S3ObjectItemReaderTests {
+
+	private static final String CONTENT = "id,owner_id,name\r\n1,1,spot\r\n2,1,\"two\nlines\"\n3,2,pete\n4,2,lucy\n";
+
+	private final AmazonS3 amazonS3 = mock(AmazonS3.class);
+
+	@Test
+	void restartRequestsRangeFromLastCommittedRecord() throws Exception {
+		byte[] content = CONTENT.getBytes(StandardCharsets.UTF_8);
+		serve("a.csv", content);
+		ExecutionContext executionContext = new ExecutionContext();
+		S3ObjectItemReader<PetDto> reader = reader("a.csv");
+		reader.open(executionContext);
+		assertEquals("spot", reader.read().getName());
+		assertEquals("two\nlines", reader.read().getName());
+		reader.update(executionContext);
+		reader.read();
+		reader.close();
+
+		S3ObjectItemReader<PetDto> restarted = reader("a.csv");
+		restarted.open(executionContext);
+
+		assertEquals(List.of("pete", "lucy"), names(restarted));
+		ArgumentCaptor<GetObjectRequest> requests = ArgumentCaptor.forClass(GetObjectRequest.class);
+		verify(amazonS3, times(2)).getObject(requests.capture());
+		assertNull(requests.getAllValues().get(0).getRange());
+		assertEquals(CONTENT.indexOf("3,2,pete"), requests.getAllValues().get(1).getRange()[0]);
+		assertEquals(List.of("e1"), requests.getAllValues().get(1).getMatchingETagConstraints());
+	}
+
+	@Test
+	void restartFailsWhenObjectWasReplaced() throws Exception {
+		serve("a.csv", CONTENT.getBytes(StandardCharsets.UTF_8));
+		ExecutionContext executionContext = new ExecutionContext();
+		S3ObjectItemReader<PetDto> reader = reader("a.csv");
+		reader.open(executionContext);
+		reader.read();
+		reader.update(executionContext);
+		reader.close();
+		// S3 answers a request whose If-Match no longer holds with 412, which the client returns as null
+		doReturn(null).when(amazonS3).getObject(argThat((GetObjectRequest request) -> !request.getMatchingETagConstraints().isEmpty()));
+
+		S3ObjectItemReader<PetDto> restarted = reader("a.csv");
+
+		assertThrows(ItemStreamException.class, () -> restarted.open(executionContext));
+	}
+
+	@Test
+	void restartAfterWholeObjectWasReadReadsNothing() throws Exception {
+		serve("a.csv", CONTENT.getBytes(StandardCharsets.UTF_8));
+		ExecutionContext executionContext = new ExecutionContext();
+		S3ObjectItemReader<PetDto> reader = reader("a.csv");
+		reader.open(executionContext);
+		names(reader);
+		reader.update(executionContext);
+		reader.close();
+		AmazonS3Exception notSatisfiable = new AmazonS3Exception("Requested Range Not Satisfiable");
+		notSatisfiable.setStatusCode(416);
+		when(amazonS3.getObject(argThat((GetObjectRequest request) -> request.getRange() != null))).thenThrow(notSatisfiable);
+
+		S3ObjectItemReader<PetDto> restarted = reader("a.csv");
+		restarted.open(executionContext);
+
+		assertNull(restarted.read());
+	}
+
+	@Test
+	void restartOfCompressedObjectSkipsRecordsAlreadyRead() throws Exception {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (OutputStream out = CompressionCodec.GZIP.compress(compressed)) {
+			out.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+		}
+		serve("a.csv.gz", compressed.toByteArray());
+		ExecutionContext executionContext = new ExecutionContext();
+		S3ObjectItemReader<PetDto> reader = reader("a.csv.gz");
+		reader.open(executionContext);
+		reader.read();
+		reader.read();
+		reader.update(executionContext);
+		reader.close();
+
+		S3ObjectItemReader<PetDto> restarted = reader("a.csv.gz");
+		restarted.open(executionContext);
+
+		assertEquals(List.of("pete", "lucy"), names(restarted));
+		ArgumentCaptor<GetObjectRequest> requests = ArgumentCaptor.forClass(GetObjectRequest.class);
+		verify(amazonS3, times(2)).getObject(requests.capture());
+		assertNull(requests.getAllValues().get(1).getRange());
+		assertEquals(List.of("e1"), requests.getAllValues().get(1).getMatchingETagConstraints());
+	}
+
+	private void serve(String key, byte[] content) {
+		when(amazonS3.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+			GetObjectRequest request = invocation.getArgument(0);
+			int start = request.getRange() == null ? 0 : (int) request.getRange()[0];
+			S3Object object = new S3Object();
+			object.setKey(key);
+			ObjectMetadata metadata = new ObjectMetadata();
+			metadata.setHeader("ETag", "e1");
+			object.setObjectMetadata(metadata);
+			object.setObjectContent(new ByteArrayInputStream(content, start, content.length - start));
+			return object;
+		});
+	}
+
+	private S3ObjectItemReader<PetDto> reader(String key) {
+		// a buffer smaller than a line, so lines and records span refills
+		S3ObjectItemReader<PetDto> reader = new S3ObjectItemReader<>(amazonS3, "output", key, new PetDtoLineMapper(), 5);
+		reader.setName("petNameS3Reader");
+		reader.setLinesToSkip(1);
+		reader.setRecordSeparatorPolicy(new QuotedRecordSeparatorPolicy());
+		return reader;
+	}
+
+	private static List<String> names(S3ObjectItemReader<PetDto> reader) throws Exception {
+		List<String> names = new ArrayList<>();
+		PetDto pet;
+		while ((pet = reader.read()) != null) {
+			names.add(pet.getName());
+		}
+		return names;
+	}
+
+}
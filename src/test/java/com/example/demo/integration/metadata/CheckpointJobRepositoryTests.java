@@ -0,0 +1,79 @@
+package com.example.demo.integration.metadata;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.repository.JobRepository;
+
+import static org.mockito.Mockito.*;
+
+class CheckpointJobRepositoryTests {
+
+	private final JobRepository delegate = mock(JobRepository.class);
+
+	@Test
+	void writesEveryNthChunkAndTheEnd() {
+		CheckpointJobRepository jobRepository = new CheckpointJobRepository(delegate, 3, Long.MAX_VALUE);
+		StepExecution stepExecution = startedStep(jobRepository);
+
+		for (int i = 0; i < 7; i++) {
+			commitChunk(jobRepository, stepExecution);
+		}
+		verify(delegate, times(3)).update(stepExecution);
+		verify(delegate, times(3)).updateExecutionContext(stepExecution);
+
+		stepExecution.setStatus(BatchStatus.COMPLETED);
+		jobRepository.updateExecutionContext(stepExecution);
+		jobRepository.update(stepExecution);
+
+		verify(delegate, times(4)).update(stepExecution);
+		verify(delegate, times(4)).updateExecutionContext(stepExecution);
+	}
+
+	@Test
+	void writesEveryChunkOnceTheIntervalHasPassed() {
+		CheckpointJobRepository jobRepository = new CheckpointJobRepository(delegate, Integer.MAX_VALUE, 0);
+		StepExecution stepExecution = startedStep(jobRepository);
+
+		commitChunk(jobRepository, stepExecution);
+		commitChunk(jobRepository, stepExecution);
+
+		verify(delegate, times(3)).update(stepExecution);
+		verify(delegate, times(3)).updateExecutionContext(stepExecution);
+	}
+
+	@Test
+	void startsCountingAgainForARestartedStep() {
+		CheckpointJobRepository jobRepository = new CheckpointJobRepository(delegate, 3, Long.MAX_VALUE);
+		StepExecution failed = startedStep(jobRepository);
+		commitChunk(jobRepository, failed);
+		failed.setStatus(BatchStatus.FAILED);
+		jobRepository.update(failed);
+
+		StepExecution restarted = new StepExecution("extract", new JobExecution(1L), 2L);
+		restarted.setStatus(BatchStatus.STARTED);
+		jobRepository.update(restarted);
+		jobRepository.updateExecutionContext(restarted);
+
+		verify(delegate).update(restarted);
+		verify(delegate).updateExecutionContext(restarted);
+	}
+
+	private StepExecution startedStep(CheckpointJobRepository jobRepository) {
+		StepExecution stepExecution = new StepExecution("extract", new JobExecution(1L), 1L);
+		stepExecution.setStatus(BatchStatus.STARTED);
+		// the step is saved as started, then with the context its streams were opened with
+		jobRepository.update(stepExecution);
+		jobRepository.updateExecutionContext(stepExecution);
+		verify(delegate).update(stepExecution);
+		verify(delegate).updateExecutionContext(stepExecution);
+		return stepExecution;
+	}
+
+	private static void commitChunk(CheckpointJobRepository jobRepository, StepExecution stepExecution) {
+		jobRepository.updateExecutionContext(stepExecution);
+		jobRepository.update(stepExecution);
+	}
+
+}
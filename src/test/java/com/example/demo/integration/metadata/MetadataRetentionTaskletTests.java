@@ -0,0 +1,62 @@
+package com.example.demo.integration.metadata;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MetadataRetentionTaskletTests {
+
+	private final NamedParameterJdbcTemplate jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+	private final Date cutoff = new Date(0);
+	private final MetadataRetentionTasklet tasklet = new MetadataRetentionTasklet(jdbcTemplate, cutoff, 2);
+
+	@Test
+	void deletesExpiredInstancesOneBatchPerCall() {
+		when(jdbcTemplate.queryForList(anyString(), anyMap(), eq(Long.class))).thenReturn(List.of(1L, 2L), List.of(3L), List.of());
+		StepContribution contribution = new StepExecution("purge", new JobExecution(1L)).createStepContribution();
+
+		assertEquals(RepeatStatus.CONTINUABLE, tasklet.execute(contribution, null));
+		assertEquals(RepeatStatus.CONTINUABLE, tasklet.execute(contribution, null));
+		assertEquals(RepeatStatus.FINISHED, tasklet.execute(contribution, null));
+
+		assertEquals(3, contribution.getWriteCount());
+		verify(jdbcTemplate, times(3)).queryForList(anyString(), eq(Map.of("cutoff", cutoff, "limit", 2)), eq(Long.class));
+		verify(jdbcTemplate, times(6)).update(anyString(), eq(Map.of("ids", List.of(1L, 2L))));
+		verify(jdbcTemplate, times(6)).update(anyString(), eq(Map.of("ids", List.of(3L))));
+	}
+
+	@Test
+	void deletesChildrenBeforeTheirInstances() {
+		when(jdbcTemplate.queryForList(anyString(), anyMap(), eq(Long.class))).thenReturn(List.of(1L));
+		ArgumentCaptor<String> deletes = ArgumentCaptor.forClass(String.class);
+
+		tasklet.execute(new StepExecution("purge", new JobExecution(1L)).createStepContribution(), null);
+
+		verify(jdbcTemplate, times(6)).update(deletes.capture(), anyMap());
+		List<String> tables = deletes.getAllValues().stream().map(delete -> delete.split(" ")[2]).toList();
+		assertEquals(List.of("BATCH_STEP_EXECUTION_CONTEXT", "BATCH_STEP_EXECUTION", "BATCH_JOB_EXECUTION_CONTEXT",
+				"BATCH_JOB_EXECUTION_PARAMS", "BATCH_JOB_EXECUTION", "BATCH_JOB_INSTANCE"), tables);
+	}
+
+	@Test
+	void doesNothingWhenNothingExpired() {
+		when(jdbcTemplate.queryForList(anyString(), anyMap(), eq(Long.class))).thenReturn(List.of());
+
+		assertEquals(RepeatStatus.FINISHED, tasklet.execute(new StepExecution("purge", new JobExecution(1L)).createStepContribution(), null));
+
+		verify(jdbcTemplate, never()).update(anyString(), anyMap());
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.example.demo.metrics;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.event.ProgressEvent;
+import com.amazonaws.event.ProgressEventType;
+import com.amazonaws.event.ProgressListener;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class S3MetricsTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final S3Metrics s3Metrics = new S3Metrics(meterRegistry);
+
+	@Test
+	void countsBytesOfRequestSentAgainOnce() {
+		UploadPartRequest request = new UploadPartRequest();
+
+		s3Metrics.beforeExecution(request);
+		ProgressListener listener = request.getGeneralProgressListener();
+		s3Metrics.beforeExecution(request);
+
+		assertSame(listener, request.getGeneralProgressListener());
+		transfer(request, 100);
+		assertEquals(100, uploaded());
+	}
+
+	@Test
+	void chainsOntoTransferListenerOnce() {
+		AtomicLong transferred = new AtomicLong();
+		UploadPartRequest request = new UploadPartRequest();
+		request.setGeneralProgressListener(event -> transferred.addAndGet(event.getBytesTransferred()));
+
+		s3Metrics.beforeExecution(request);
+		ProgressListener chain = request.getGeneralProgressListener();
+		s3Metrics.beforeExecution(request);
+
+		assertSame(chain, request.getGeneralProgressListener());
+		transfer(request, 100);
+		assertEquals(100, transferred.get());
+		assertEquals(100, uploaded());
+	}
+
+	private static void transfer(AmazonWebServiceRequest request, long bytes) {
+		request.getGeneralProgressListener().progressChanged(new ProgressEvent(ProgressEventType.REQUEST_BYTE_TRANSFER_EVENT, bytes));
+	}
+
+	private double uploaded() {
+		return meterRegistry.get("s3.transfer.bytes").tag("direction", "upload").counter().count();
+	}
+
+}